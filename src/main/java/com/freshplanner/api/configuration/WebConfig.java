@@ -1,5 +1,7 @@
 package com.freshplanner.api.configuration;
 
+import com.freshplanner.api.enums.Match;
+import com.freshplanner.api.enums.Nutrient;
 import com.freshplanner.api.enums.RoleName;
 import com.freshplanner.api.enums.Unit;
 import org.springframework.context.annotation.Configuration;
@@ -33,6 +35,8 @@ public class WebConfig implements WebMvcConfigurer {
     public void addFormatters(FormatterRegistry registry) {
         registry.addConverter(new UnitConverter());
         registry.addConverter(new RoleNameConverter());
+        registry.addConverter(new NutrientConverter());
+        registry.addConverter(new MatchConverter());
     }
 
     // === CONVERTER ===================================================================================================
@@ -50,4 +54,18 @@ public class WebConfig implements WebMvcConfigurer {
             return RoleName.decode(s);
         }
     }
+
+    static class NutrientConverter implements Converter<String, Nutrient> {
+        @Override
+        public Nutrient convert(String s) {
+            return Nutrient.decode(s);
+        }
+    }
+
+    static class MatchConverter implements Converter<String, Match> {
+        @Override
+        public Match convert(String s) {
+            return Match.decode(s);
+        }
+    }
 }
@@ -17,7 +17,7 @@ import org.springframework.web.bind.annotation.*;
 import java.util.List;
 import java.util.stream.Collectors;
 
-@CrossOrigin(origins = "*", maxAge = 3600)
+@CrossOrigin(origins = "*", maxAge = 3600, exposedHeaders = KeysetPage.NEXT_HEADER)
 @RestController
 @RequestMapping("/cart")
 public class CartController {
@@ -51,17 +51,35 @@ public class CartController {
         return ResponseEntity.ok(cartDB.insertCartItem(username, cartId, item).mapToModel());
     }
 
+    @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
+    @ApiOperation("Add all items of a recipe to the cart, counts are added to existing items. UserEntity validation for cart ownership.")
+    @PostMapping(path = "/{cartId}/add-recipe/{recipeId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Cart> addRecipe(@ApiParam(value = "cart db id", example = "1")
+                                          @PathVariable Integer cartId,
+                                          @ApiParam(value = "recipe db id", example = "1")
+                                          @PathVariable Integer recipeId,
+                                          @ApiParam(value = "multiplier for the recipe item counts", example = "2")
+                                          @RequestParam(value = "servings", defaultValue = "1") Integer servings) throws ElementNotFoundException, NoAccessException {
+        String username = SecurityContext.extractUsername();
+
+        return ResponseEntity.ok(cartDB.insertRecipeItems(username, cartId, recipeId, servings).mapToModel());
+    }
+
     // === GET =========================================================================================================
 
     @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
-    @ApiOperation("Get all carts from the user.")
+    @ApiOperation("Get a page of carts from the user. The cursor for the next page is in the header '" + KeysetPage.NEXT_HEADER + "'.")
     @GetMapping(path = "", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<Cart>> getUserCarts() {
+    public ResponseEntity<List<Cart>> getUserCarts(@ApiParam(value = "last cart db id of the previous page", example = "0")
+                                                   @RequestParam(value = "after", defaultValue = KeysetPage.DEFAULT_AFTER) Integer after,
+                                                   @ApiParam(value = "page size", example = "100")
+                                                   @RequestParam(value = "limit", defaultValue = KeysetPage.DEFAULT_LIMIT) Integer limit) {
         String username = SecurityContext.extractUsername();
 
-        return ResponseEntity.ok(
-                cartDB.selectUserCarts(username)
-                        .stream().map(CartEntity::mapToModel).collect(Collectors.toList()));
+        return KeysetPage.response(
+                cartDB.selectUserCarts(username, after, KeysetPage.validate(limit))
+                        .stream().map(CartEntity::mapToModel).collect(Collectors.toList()),
+                Cart::getId, limit);
     }
 
     @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
@@ -74,6 +92,18 @@ public class CartController {
         return ResponseEntity.ok(cartDB.selectCartById(username, cartId).mapToModel());
     }
 
+    @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
+    @ApiOperation("Get the items of the cart that were added, updated or removed since the revision. UserEntity validation for cart ownership.")
+    @GetMapping(path = "/{cartId}/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Cart.Changes> getCartChanges(@ApiParam(value = "cart db id", example = "1")
+                                                       @PathVariable Integer cartId,
+                                                       @ApiParam(value = "revision the client already has", example = "0")
+                                                       @RequestParam(value = "since", defaultValue = "0") Long since) throws ElementNotFoundException, NoAccessException {
+        String username = SecurityContext.extractUsername();
+
+        return ResponseEntity.ok(cartDB.selectCartChanges(username, cartId, since));
+    }
+
     // === PUT =========================================================================================================
 
     @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
@@ -120,6 +150,31 @@ public class CartController {
         return ResponseEntity.ok(cartDB.updateCartItem(username, cartId, itemModel).mapToModel());
     }
 
+    @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
+    @ApiOperation("Insert or update many cart items at once (the count gets replaced). UserEntity validation for cart ownership.")
+    @PutMapping(path = "/{cartId}/items", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Cart> upsertCartItems(@ApiParam(value = "cart db id", example = "1")
+                                                @PathVariable Integer cartId,
+                                                @RequestBody List<Cart.Item> items) throws ElementNotFoundException, NoAccessException {
+        String username = SecurityContext.extractUsername();
+
+        return ResponseEntity.ok(cartDB.upsertCartItems(username, cartId, items).mapToModel());
+    }
+
+    @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
+    @ApiOperation("Add a delta to the count of a cart item in one atomic update (never below 0, a missing item only gets inserted for a positive delta). UserEntity validation for cart ownership.")
+    @PutMapping(path = "/{cartId}/items/{productId}/count", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Cart.Item> updateCartItemCount(@ApiParam(value = "cart db id", example = "1")
+                                                         @PathVariable Integer cartId,
+                                                         @ApiParam(value = "product db id", example = "1")
+                                                         @PathVariable Integer productId,
+                                                         @ApiParam(value = "change of the count", example = "-1")
+                                                         @RequestParam(value = "delta") Float delta) throws ElementNotFoundException, NoAccessException {
+        String username = SecurityContext.extractUsername();
+
+        return ResponseEntity.ok(cartDB.updateCartItemCount(username, cartId, productId, delta).mapToModel());
+    }
+
     // === DELETE ======================================================================================================
 
     @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
@@ -3,6 +3,7 @@ package com.freshplanner.api.controller;
 import com.freshplanner.api.controller.model.ApiError;
 import com.freshplanner.api.exception.ElementNotFoundException;
 import com.freshplanner.api.utility.ApiLogger;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -12,6 +13,7 @@ import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
+import javax.persistence.OptimisticLockException;
 import javax.servlet.http.HttpServletRequest;
 
 @ControllerAdvice
@@ -42,6 +44,11 @@ public class GlobalExceptionHandler {
         return handleDefaultException(request, exception, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler({OptimisticLockingFailureException.class, OptimisticLockException.class})
+    public ResponseEntity<ApiError> handleConflictException(HttpServletRequest request, Exception exception) {
+        return handleDefaultException(request, exception, HttpStatus.CONFLICT);
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<ApiError> handleValidationException(HttpServletRequest request, MethodArgumentNotValidException exception) {
         ApiError apiErrorResponse = new ApiError(
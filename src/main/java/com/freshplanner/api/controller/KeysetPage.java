@@ -0,0 +1,86 @@
+package com.freshplanner.api.controller;
+
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * <h2>Keyset Page</h2>
+ * Helper for the paginated list endpoints. A page is requested with 'after' (last id of the previous page)
+ * and 'limit'. If the page is full, the response carries the cursor for the next page in {@link #NEXT_HEADER}.
+ * Pages of versioned data can carry an ETag built with {@link #eTag}.
+ */
+final class KeysetPage {
+
+    static final String NEXT_HEADER = "X-Next-After";
+    static final String DEFAULT_AFTER = "0";
+    static final String DEFAULT_LIMIT = "100";
+    static final int MAX_LIMIT = 1000;
+
+    private KeysetPage() {
+    }
+
+    /**
+     * @param limit requested page size
+     * @return validated page size
+     * @throws IllegalArgumentException if the limit is out of range
+     */
+    static int validate(int limit) throws IllegalArgumentException {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("Page limit must be between 1 and " + MAX_LIMIT + " but was " + limit);
+        }
+        return limit;
+    }
+
+    /**
+     * @param version version of the data, taken before the page is read
+     * @param after   requested cursor
+     * @param limit   requested page size
+     * @return strong ETag of the page
+     */
+    static String eTag(long version, int after, int limit) {
+        return "\"" + version + "-" + after + "-" + limit + "\"";
+    }
+
+    /**
+     * @param version version of the data, taken before the page is read
+     * @param query   further query parameters with a value based hash code
+     * @param after   requested cursor
+     * @param limit   requested page size
+     * @return strong ETag of the page
+     */
+    static String eTag(long version, Object query, int after, int limit) {
+        return "\"" + version + "-" + Integer.toHexString(query.hashCode()) + "-" + after + "-" + limit + "\"";
+    }
+
+    /**
+     * @param models  page content in ascending id order
+     * @param idOf    id accessor of the model
+     * @param limit   requested page size
+     * @param <T>     model type
+     * @return response with the page and the cursor for the next page
+     */
+    static <T> ResponseEntity<List<T>> response(List<T> models, Function<T, Integer> idOf, int limit) {
+        return response(models, idOf, limit, null);
+    }
+
+    /**
+     * @param models page content in ascending id order
+     * @param idOf   id accessor of the model
+     * @param limit  requested page size
+     * @param eTag   ETag of the page or null
+     * @param <T>    model type
+     * @return response with the page, its ETag and the cursor for the next page
+     */
+    static <T> ResponseEntity<List<T>> response(List<T> models, Function<T, Integer> idOf, int limit, String eTag) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (eTag != null) {
+            builder.eTag(eTag);
+        }
+        if (models.size() >= limit) {
+            builder.header(NEXT_HEADER, idOf.apply(models.get(models.size() - 1)).toString());
+        }
+        return builder.body(models);
+    }
+}
@@ -0,0 +1,49 @@
+package com.freshplanner.api.controller;
+
+import com.freshplanner.api.controller.model.MealPlan;
+import com.freshplanner.api.controller.model.PlannedIngredient;
+import com.freshplanner.api.exception.ElementNotFoundException;
+import com.freshplanner.api.exception.NoAccessException;
+import com.freshplanner.api.security.SecurityContext;
+import com.freshplanner.api.service.planner.PlannerDB;
+import com.freshplanner.api.service.storage.StorageDB;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController
+@RequestMapping("/planner")
+public class PlannerController {
+
+    private final PlannerDB plannerDB;
+    private final StorageDB storageDB;
+
+    @Autowired
+    public PlannerController(PlannerDB plannerDB, StorageDB storageDB) {
+        this.plannerDB = plannerDB;
+        this.storageDB = storageDB;
+    }
+
+    // === POST ========================================================================================================
+
+    @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
+    @ApiOperation("Get the summed ingredients of a meal plan, optionally compared with a storage. UserEntity validation for storage ownership.")
+    @PostMapping(path = "/ingredients", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<PlannedIngredient>> getPlanIngredients(@RequestBody MealPlan mealPlan,
+                                                                      @ApiParam(value = "storage db id to compare with", example = "1")
+                                                                      @RequestParam(value = "storageId", required = false) Integer storageId)
+            throws ElementNotFoundException, NoAccessException {
+        String username = SecurityContext.extractUsername();
+
+        Map<Integer, Float> available = storageId != null ? storageDB.selectStorageItemCounts(username, storageId) : null;
+        return ResponseEntity.ok(plannerDB.selectPlanIngredients(mealPlan, available));
+    }
+}
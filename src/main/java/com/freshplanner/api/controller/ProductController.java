@@ -1,44 +1,99 @@
 package com.freshplanner.api.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.freshplanner.api.controller.model.BulkImport;
+import com.freshplanner.api.controller.model.CacheStatistics;
+import com.freshplanner.api.controller.model.NutritionStatistics;
 import com.freshplanner.api.controller.model.Product;
+import com.freshplanner.api.controller.model.ProductFilter;
+import com.freshplanner.api.controller.model.Suggestion;
+import com.freshplanner.api.enums.Nutrient;
 import com.freshplanner.api.enums.Unit;
 import com.freshplanner.api.exception.ElementNotFoundException;
 import com.freshplanner.api.service.product.ProductDB;
 import com.freshplanner.api.service.product.ProductEntity;
+import com.freshplanner.api.utility.CategoryRegistry;
+import com.freshplanner.api.utility.CsvReader;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.stream.Collectors;
 
-@CrossOrigin(origins = "*", maxAge = 3600)
+@CrossOrigin(origins = "*", maxAge = 3600, exposedHeaders = {KeysetPage.NEXT_HEADER, HttpHeaders.ETAG})
 @RestController
 @RequestMapping("/product")
 public class ProductController {
 
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    private static final String TEXT_CSV_VALUE = "text/csv";
+    private static final String UNITS_ETAG = "\"" + Integer.toHexString(Unit.getAll().toString().hashCode()) + "\"";
+
     private final ProductDB productDB;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public ProductController(ProductDB productDB) {
+    public ProductController(ProductDB productDB, ObjectMapper objectMapper) {
         this.productDB = productDB;
+        this.objectMapper = objectMapper;
     }
 
     /**
      * GET
      *
-     * @return existing products
+     * @param after   from request parameter
+     * @param limit   from request parameter
+     * @param request for the 'If-None-Match' header
+     * @return existing products of the page or 304 if the catalog did not change
      */
-    @ApiOperation("Get all products from the database.")
+    @ApiOperation("Get a page of products from the database. The cursor for the next page is in the header '" + KeysetPage.NEXT_HEADER + "'. Supports 'If-None-Match' with the returned ETag.")
     @GetMapping(path = "", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<Product>> getAllProducts() {
-        return ResponseEntity.ok(
-                productDB.selectAllProducts()
-                        .stream().map(ProductEntity::mapToModel).collect(Collectors.toList()));
+    public ResponseEntity<List<Product>> getAllProducts(@ApiParam(value = "last product db id of the previous page", example = "0")
+                                                        @RequestParam(value = "after", defaultValue = KeysetPage.DEFAULT_AFTER) Integer after,
+                                                        @ApiParam(value = "page size", example = "100")
+                                                        @RequestParam(value = "limit", defaultValue = KeysetPage.DEFAULT_LIMIT) Integer limit,
+                                                        WebRequest request) {
+        String eTag = KeysetPage.eTag(productDB.selectCatalogVersion(), after, KeysetPage.validate(limit));
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return KeysetPage.response(
+                productDB.selectAllProducts(after, limit)
+                        .stream().map(ProductEntity::mapToModel).collect(Collectors.toList()),
+                Product::getId, limit, eTag);
+    }
+
+    /**
+     * GET
+     *
+     * @return all products as newline-delimited JSON, streamed from the database row by row
+     */
+    @ApiOperation("Export all products as newline-delimited JSON (one product per line).")
+    @GetMapping(path = "/export", produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportProducts() {
+        StreamingResponseBody body = outputStream -> productDB.exportProducts(product -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(product.mapToModel()));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE)).body(body);
     }
 
     /**
@@ -59,15 +114,40 @@ public class ProductController {
      * GET
      *
      * @param productName from request parameter
-     * @return matching objects
+     * @param limit       from request parameter
+     * @return matching objects, best match first
      */
     @ApiOperation("Search products by contained name.")
     @GetMapping(path = "/search-name", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<List<Product>> searchProductsByName(@ApiParam(value = "product name", example = "Apple")
-                                                              @RequestParam(value = "name") String productName) {
+                                                              @RequestParam(value = "name") String productName,
+                                                              @ApiParam(value = "maximum number of results", example = "50")
+                                                              @RequestParam(value = "limit", defaultValue = "50") Integer limit) {
+
+        return ResponseEntity.ok(
+                productDB.selectProductsByName(productName, KeysetPage.validate(limit))
+                        .stream().map(ProductEntity::mapToModel).collect(Collectors.toList()));
+    }
+
+    /**
+     * GET
+     *
+     * @param productName from request parameter
+     * @param distance    from request parameter
+     * @param limit       from request parameter
+     * @return matching objects, closest match first
+     */
+    @ApiOperation("Search products by name, tolerating typos up to the given edit distance per word.")
+    @GetMapping(path = "/search-fuzzy", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<Product>> searchProductsByNameFuzzy(@ApiParam(value = "product name", example = "Spagetti")
+                                                                   @RequestParam(value = "name") String productName,
+                                                                   @ApiParam(value = "allowed edits per word (1-2)", example = "2")
+                                                                   @RequestParam(value = "distance", defaultValue = "2") Integer distance,
+                                                                   @ApiParam(value = "maximum number of results", example = "50")
+                                                                   @RequestParam(value = "limit", defaultValue = "50") Integer limit) {
 
         return ResponseEntity.ok(
-                productDB.selectProductsByName(productName)
+                productDB.selectProductsByNameFuzzy(productName, distance, KeysetPage.validate(limit))
                         .stream().map(ProductEntity::mapToModel).collect(Collectors.toList()));
     }
 
@@ -75,15 +155,90 @@ public class ProductController {
      * GET
      *
      * @param productCategory from request parameter
-     * @return matching objects
+     * @param limit           from request parameter
+     * @return matching objects, best match first
      */
     @ApiOperation("Search products by contained category.")
     @GetMapping(path = "/search-category", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<List<Product>> searchProductsByCategory(@ApiParam(value = "product category", example = "Apple")
-                                                                  @RequestParam(value = "category") String productCategory) {
+                                                                  @RequestParam(value = "category") String productCategory,
+                                                                  @ApiParam(value = "maximum number of results", example = "50")
+                                                                  @RequestParam(value = "limit", defaultValue = "50") Integer limit) {
 
         return ResponseEntity.ok(
-                productDB.selectProductsByCategory(productCategory)
+                productDB.selectProductsByCategory(productCategory, KeysetPage.validate(limit))
+                        .stream().map(ProductEntity::mapToModel).collect(Collectors.toList()));
+    }
+
+    /**
+     * GET
+     *
+     * @param prefix from request parameter
+     * @param limit  from request parameter
+     * @return matching names in alphabetical order
+     */
+    @ApiOperation("Suggest products by the start of the name.")
+    @GetMapping(path = "/suggest", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<Suggestion>> suggestProducts(@ApiParam(value = "start of the product name", example = "Spa")
+                                                            @RequestParam(value = "prefix") String prefix,
+                                                            @ApiParam(value = "maximum number of results", example = "10")
+                                                            @RequestParam(value = "limit", defaultValue = "10") Integer limit) {
+
+        return ResponseEntity.ok(productDB.selectProductSuggestions(prefix, KeysetPage.validate(limit)));
+    }
+
+    /**
+     * GET
+     *
+     * @param filter  from request parameters
+     * @param after   from request parameter
+     * @param limit   from request parameter
+     * @param request for the 'If-None-Match' header
+     * @return matching products of the page or 304 if the catalog did not change
+     */
+    @ApiOperation("Filter products by nutrient ranges and category. The cursor for the next page is in the header '" + KeysetPage.NEXT_HEADER + "'. Supports 'If-None-Match' with the returned ETag.")
+    @GetMapping(path = "/filter", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<Product>> filterProducts(ProductFilter filter,
+                                                        @ApiParam(value = "last product db id of the previous page", example = "0")
+                                                        @RequestParam(value = "after", defaultValue = KeysetPage.DEFAULT_AFTER) Integer after,
+                                                        @ApiParam(value = "page size", example = "100")
+                                                        @RequestParam(value = "limit", defaultValue = KeysetPage.DEFAULT_LIMIT) Integer limit,
+                                                        WebRequest request) {
+        String eTag = KeysetPage.eTag(productDB.selectCatalogVersion(), filter, after, KeysetPage.validate(limit));
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return KeysetPage.response(
+                productDB.selectProductsByFilter(filter, after, limit)
+                        .stream().map(ProductEntity::mapToModel).collect(Collectors.toList()),
+                Product::getId, limit, eTag);
+    }
+
+    /**
+     * GET
+     *
+     * @param nutrient  from request parameter
+     * @param ascending from request parameter
+     * @param min       from request parameter
+     * @param max       from request parameter
+     * @param limit     from request parameter
+     * @return matching objects sorted by the nutrient
+     */
+    @ApiOperation("Get the products with the most (or least) of a nutrient, optionally within a value range.")
+    @GetMapping(path = "/top-nutrient", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<Product>> getTopProductsByNutrient(@ApiParam(value = "nutrient to sort by", example = "PROTEIN")
+                                                                  @RequestParam(value = "nutrient") Nutrient nutrient,
+                                                                  @ApiParam(value = "smallest values first", example = "false")
+                                                                  @RequestParam(value = "ascending", defaultValue = "false") Boolean ascending,
+                                                                  @ApiParam(value = "smallest accepted value", example = "10")
+                                                                  @RequestParam(value = "min", required = false) Float min,
+                                                                  @ApiParam(value = "largest accepted value", example = "50")
+                                                                  @RequestParam(value = "max", required = false) Float max,
+                                                                  @ApiParam(value = "maximum number of results", example = "50")
+                                                                  @RequestParam(value = "limit", defaultValue = "50") Integer limit) {
+
+        return ResponseEntity.ok(
+                productDB.selectProductsByNutrient(nutrient, ascending, min, max, KeysetPage.validate(limit))
                         .stream().map(ProductEntity::mapToModel).collect(Collectors.toList()));
     }
 
@@ -99,6 +254,48 @@ public class ProductController {
         return ResponseEntity.ok(productDB.insertProduct(productModel).mapToModel());
     }
 
+    /**
+     * POST
+     *
+     * @param productModels from request body
+     * @return counts and failures of the import
+     */
+    @ApiOperation("Insert many products as JSON array in JDBC batches. Duplicates and invalid rows get reported.")
+    @PreAuthorize("hasRole('EDITOR') or hasRole('ADMIN')")
+    @PostMapping(path = "/bulk", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkImport> addProducts(@RequestBody List<Product> productModels) {
+        return ResponseEntity.ok(productDB.insertProducts(productModels.iterator()));
+    }
+
+    /**
+     * POST
+     *
+     * @param reader request body as CSV with header line (name,category,unit,packageSize,kcal,carbohydrates,protein,fat)
+     * @return counts and failures of the import
+     */
+    @ApiOperation("Insert many products as CSV stream in JDBC batches. Duplicates and invalid rows get reported.")
+    @PreAuthorize("hasRole('EDITOR') or hasRole('ADMIN')")
+    @PostMapping(path = "/bulk", produces = MediaType.APPLICATION_JSON_VALUE, consumes = TEXT_CSV_VALUE)
+    public ResponseEntity<BulkImport> addProductsCsv(Reader reader) {
+        CsvReader csv = new CsvReader(reader);
+        if (!csv.hasNext()) {
+            throw new IllegalArgumentException("CSV header line is missing");
+        }
+        List<String> header = Arrays.stream(csv.next()).map(column -> column.toLowerCase(Locale.ROOT)).collect(Collectors.toList());
+        Iterator<Product> productModels = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return csv.hasNext();
+            }
+
+            @Override
+            public Product next() {
+                return mapCsvRow(header, csv.next());
+            }
+        };
+        return ResponseEntity.ok(productDB.insertProducts(productModels));
+    }
+
     /**
      * PUT
      *
@@ -132,22 +329,105 @@ public class ProductController {
     /**
      * GET
      *
-     * @return existing categories
+     * @return hit, miss and eviction counts of the product cache
      */
-    @ApiOperation("Get all existing product categories.")
+    @ApiOperation("Get the statistics of the product cache.")
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping(path = "/cache-statistics", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CacheStatistics> getCacheStatistics() {
+        return ResponseEntity.ok(productDB.selectCacheStatistics());
+    }
+
+    /**
+     * GET
+     *
+     * @param nutrient from request parameter
+     * @return count, min, max and mean of the nutrient over all products
+     */
+    @ApiOperation("Get the statistics of a nutrient over all products.")
+    @GetMapping(path = "/nutrition-statistics", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<NutritionStatistics> getNutritionStatistics(@ApiParam(value = "nutrient", example = "PROTEIN")
+                                                                      @RequestParam(value = "nutrient") Nutrient nutrient) {
+        return ResponseEntity.ok(productDB.selectNutritionStatistics(nutrient));
+    }
+
+    /**
+     * GET
+     *
+     * @param request to check the header 'If-None-Match'
+     * @return existing categories or 304 if the ETag matches
+     */
+    @ApiOperation("Get all existing product categories. Supports 'If-None-Match' with the returned ETag.")
     @GetMapping(path = "/categories", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<String>> getCategories() {
-        return ResponseEntity.ok(productDB.selectDistinctCategories());
+    public ResponseEntity<List<String>> getCategories(WebRequest request) {
+        CategoryRegistry.Snapshot categories = productDB.selectDistinctCategories();
+        if (request.checkNotModified(categories.getETag())) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(categories.getETag()).body(categories.getCategories());
+    }
+
+    /**
+     * PUT
+     *
+     * @return existing categories, freshly counted from the database
+     */
+    @ApiOperation("Rebuild the in-memory product categories from the database.")
+    @PreAuthorize("hasRole('ADMIN')")
+    @PutMapping(path = "/categories/rebuild", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<String>> rebuildCategories() {
+        CategoryRegistry.Snapshot categories = productDB.rebuildCategories();
+        return ResponseEntity.ok().eTag(categories.getETag()).body(categories.getCategories());
     }
 
     /**
      * GET
      *
-     * @return existing units
+     * @param request for the 'If-None-Match' header
+     * @return existing units or 304 if the client has them
      */
-    @ApiOperation("Get all existing product units.")
+    @ApiOperation("Get all existing product units. Supports 'If-None-Match' with the returned ETag.")
     @GetMapping(path = "/units", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<Unit>> getUnits() {
-        return ResponseEntity.ok(Unit.getAll());
+    public ResponseEntity<List<Unit>> getUnits(WebRequest request) {
+        if (request.checkNotModified(UNITS_ETAG)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(UNITS_ETAG).body(Unit.getAll());
+    }
+
+    // === UTILITY =====================================================================================================
+
+    /**
+     * @param header lower case column names
+     * @param fields values of one CSV row
+     * @return product model of the row
+     * @throws IllegalArgumentException if a value can not be parsed
+     */
+    private static Product mapCsvRow(List<String> header, String[] fields) throws IllegalArgumentException {
+        Product product = new Product();
+        for (int i = 0; i < fields.length && i < header.size(); i++) {
+            String value = fields[i].isEmpty() ? null : fields[i];
+            if (value == null) {
+                continue;
+            }
+            try {
+                switch (header.get(i)) {
+                    case "name" -> product.setName(value);
+                    case "category" -> product.setCategory(value);
+                    case "unit" -> product.setUnit(Unit.decode(value));
+                    case "packagesize" -> product.setPackageSize(Float.valueOf(value));
+                    case "kcal" -> product.setKcal(Float.valueOf(value));
+                    case "carbohydrates" -> product.setCarbohydrates(Float.valueOf(value));
+                    case "protein" -> product.setProtein(Float.valueOf(value));
+                    case "fat" -> product.setFat(Float.valueOf(value));
+                    default -> {
+                        // unknown columns get ignored
+                    }
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid value '" + value + "' in column '" + header.get(i) + "'");
+            }
+        }
+        return product;
     }
 }
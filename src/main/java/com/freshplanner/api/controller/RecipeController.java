@@ -1,21 +1,29 @@
 package com.freshplanner.api.controller;
 
 import com.freshplanner.api.controller.model.Recipe;
+import com.freshplanner.api.controller.model.RecipeSummary;
+import com.freshplanner.api.controller.model.SimilarRecipe;
+import com.freshplanner.api.controller.model.Suggestion;
+import com.freshplanner.api.enums.Match;
 import com.freshplanner.api.exception.ElementNotFoundException;
 import com.freshplanner.api.service.recipe.RecipeDB;
 import com.freshplanner.api.service.recipe.RecipeEntity;
+import com.freshplanner.api.utility.CategoryRegistry;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
-@CrossOrigin(origins = "*", maxAge = 3600)
+@CrossOrigin(origins = "*", maxAge = 3600, exposedHeaders = {KeysetPage.NEXT_HEADER, HttpHeaders.ETAG})
 @RestController
 @RequestMapping("/recipe")
 public class RecipeController {
@@ -47,13 +55,22 @@ public class RecipeController {
 
     // === GET =========================================================================================================
 
-    @ApiOperation("Get all recipes from the database.")
+    @ApiOperation("Get a page of recipes from the database. The cursor for the next page is in the header '" + KeysetPage.NEXT_HEADER + "'. Supports 'If-None-Match' with the returned ETag.")
     @GetMapping(path = "", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<Recipe>> getAllRecipes() {
-
-        return ResponseEntity.ok(
-                recipeDB.selectAllRecipes()
-                        .stream().map(RecipeEntity::mapToModel).collect(Collectors.toList()));
+    public ResponseEntity<List<Recipe>> getAllRecipes(@ApiParam(value = "last recipe db id of the previous page", example = "0")
+                                                      @RequestParam(value = "after", defaultValue = KeysetPage.DEFAULT_AFTER) Integer after,
+                                                      @ApiParam(value = "page size", example = "100")
+                                                      @RequestParam(value = "limit", defaultValue = KeysetPage.DEFAULT_LIMIT) Integer limit,
+                                                      WebRequest request) {
+
+        String eTag = KeysetPage.eTag(recipeDB.selectCatalogVersion(), after, KeysetPage.validate(limit));
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return KeysetPage.response(
+                recipeDB.selectAllRecipes(after, limit)
+                        .stream().map(RecipeEntity::mapToModel).collect(Collectors.toList()),
+                Recipe::getId, limit, eTag);
     }
 
     @ApiOperation("Get recipe by database ID.")
@@ -64,7 +81,7 @@ public class RecipeController {
         return ResponseEntity.ok(recipeDB.selectRecipeById(recipeId).mapToModel());
     }
 
-    @ApiOperation("Search recipes by contained name.")
+    @ApiOperation("Search recipes by contained name (with items, kept for existing clients; prefer /summary/search-name for lists).")
     @GetMapping(path = "/search-name", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<List<Recipe>> searchRecipesByName(@ApiParam(value = "recipe name", example = "Apple")
                                                             @RequestParam(value = "name") String recipeName) {
@@ -74,7 +91,7 @@ public class RecipeController {
                         .stream().map(RecipeEntity::mapToModel).collect(Collectors.toList()));
     }
 
-    @ApiOperation("Search recipes by contained category.")
+    @ApiOperation("Search recipes by contained category (with items, kept for existing clients; prefer /summary/search-category for lists).")
     @GetMapping(path = "/search-category", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<List<Recipe>> searchRecipesByCategory(@ApiParam(value = "recipe category", example = "Apple")
                                                                 @RequestParam(value = "category") String recipeCategory) {
@@ -84,15 +101,139 @@ public class RecipeController {
                         .stream().map(RecipeEntity::mapToModel).collect(Collectors.toList()));
     }
 
-    @ApiOperation("Get all existing recipe categories.")
+    @ApiOperation("Get a page of recipes that use all (or any) of the products. The cursor for the next page is in the header '" + KeysetPage.NEXT_HEADER + "'. Supports 'If-None-Match' with the returned ETag.")
+    @GetMapping(path = "/by-product", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<Recipe>> getRecipesByProducts(@ApiParam(value = "product db ids", example = "1,2")
+                                                             @RequestParam(value = "ids") List<Integer> productIds,
+                                                             @ApiParam(value = "recipes with ALL or with ANY of the products", example = "ALL")
+                                                             @RequestParam(value = "match", defaultValue = "ALL") Match match,
+                                                             @ApiParam(value = "last recipe db id of the previous page", example = "0")
+                                                             @RequestParam(value = "after", defaultValue = KeysetPage.DEFAULT_AFTER) Integer after,
+                                                             @ApiParam(value = "page size", example = "100")
+                                                             @RequestParam(value = "limit", defaultValue = KeysetPage.DEFAULT_LIMIT) Integer limit,
+                                                             WebRequest request) {
+
+        String eTag = KeysetPage.eTag(recipeDB.selectCatalogVersion(), Arrays.asList(productIds, match.name()), after, KeysetPage.validate(limit));
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return KeysetPage.response(
+                recipeDB.selectRecipesByProducts(productIds, match, after, limit)
+                        .stream().map(RecipeEntity::mapToModel).collect(Collectors.toList()),
+                Recipe::getId, limit, eTag);
+    }
+
+    @ApiOperation("Get a page of recipe summaries (without items) from the database. The cursor for the next page is in the header '" + KeysetPage.NEXT_HEADER + "'. Supports 'If-None-Match' with the returned ETag.")
+    @GetMapping(path = "/summary", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<RecipeSummary>> getAllRecipeSummaries(@ApiParam(value = "last recipe db id of the previous page", example = "0")
+                                                                     @RequestParam(value = "after", defaultValue = KeysetPage.DEFAULT_AFTER) Integer after,
+                                                                     @ApiParam(value = "page size", example = "100")
+                                                                     @RequestParam(value = "limit", defaultValue = KeysetPage.DEFAULT_LIMIT) Integer limit,
+                                                                     WebRequest request) {
+
+        String eTag = KeysetPage.eTag(recipeDB.selectCatalogVersion(), "summary", after, KeysetPage.validate(limit));
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return KeysetPage.response(recipeDB.selectAllRecipeSummaries(after, limit), RecipeSummary::getId, limit, eTag);
+    }
+
+    @ApiOperation("Search a page of recipe summaries (without items) by contained name. The cursor for the next page is in the header '" + KeysetPage.NEXT_HEADER + "'. Supports 'If-None-Match' with the returned ETag.")
+    @GetMapping(path = "/summary/search-name", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<RecipeSummary>> searchRecipeSummariesByName(@ApiParam(value = "recipe name", example = "Apple")
+                                                                           @RequestParam(value = "name") String recipeName,
+                                                                           @ApiParam(value = "last recipe db id of the previous page", example = "0")
+                                                                           @RequestParam(value = "after", defaultValue = KeysetPage.DEFAULT_AFTER) Integer after,
+                                                                           @ApiParam(value = "page size", example = "100")
+                                                                           @RequestParam(value = "limit", defaultValue = KeysetPage.DEFAULT_LIMIT) Integer limit,
+                                                                           WebRequest request) {
+
+        String eTag = KeysetPage.eTag(recipeDB.selectCatalogVersion(), Arrays.asList("summary-name", recipeName), after, KeysetPage.validate(limit));
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return KeysetPage.response(recipeDB.selectRecipeSummariesByName(recipeName, after, limit), RecipeSummary::getId, limit, eTag);
+    }
+
+    @ApiOperation("Search a page of recipe summaries (without items) by contained category. The cursor for the next page is in the header '" + KeysetPage.NEXT_HEADER + "'. Supports 'If-None-Match' with the returned ETag.")
+    @GetMapping(path = "/summary/search-category", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<RecipeSummary>> searchRecipeSummariesByCategory(@ApiParam(value = "recipe category", example = "Apple")
+                                                                               @RequestParam(value = "category") String recipeCategory,
+                                                                               @ApiParam(value = "last recipe db id of the previous page", example = "0")
+                                                                               @RequestParam(value = "after", defaultValue = KeysetPage.DEFAULT_AFTER) Integer after,
+                                                                               @ApiParam(value = "page size", example = "100")
+                                                                               @RequestParam(value = "limit", defaultValue = KeysetPage.DEFAULT_LIMIT) Integer limit,
+                                                                               WebRequest request) {
+
+        String eTag = KeysetPage.eTag(recipeDB.selectCatalogVersion(), Arrays.asList("summary-category", recipeCategory), after, KeysetPage.validate(limit));
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return KeysetPage.response(recipeDB.selectRecipeSummariesByCategory(recipeCategory, after, limit), RecipeSummary::getId, limit, eTag);
+    }
+
+    @ApiOperation("Get a page of recipe summaries (without items) that use all (or any) of the products. The cursor for the next page is in the header '" + KeysetPage.NEXT_HEADER + "'. Supports 'If-None-Match' with the returned ETag.")
+    @GetMapping(path = "/summary/by-product", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<RecipeSummary>> getRecipeSummariesByProducts(@ApiParam(value = "product db ids", example = "1,2")
+                                                                            @RequestParam(value = "ids") List<Integer> productIds,
+                                                                            @ApiParam(value = "recipes with ALL or with ANY of the products", example = "ALL")
+                                                                            @RequestParam(value = "match", defaultValue = "ALL") Match match,
+                                                                            @ApiParam(value = "last recipe db id of the previous page", example = "0")
+                                                                            @RequestParam(value = "after", defaultValue = KeysetPage.DEFAULT_AFTER) Integer after,
+                                                                            @ApiParam(value = "page size", example = "100")
+                                                                            @RequestParam(value = "limit", defaultValue = KeysetPage.DEFAULT_LIMIT) Integer limit,
+                                                                            WebRequest request) {
+
+        String eTag = KeysetPage.eTag(recipeDB.selectCatalogVersion(), Arrays.asList("summary", productIds, match.name()), after, KeysetPage.validate(limit));
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return KeysetPage.response(recipeDB.selectRecipeSummariesByProducts(productIds, match, after, limit),
+                RecipeSummary::getId, limit, eTag);
+    }
+
+    @ApiOperation("Get the recipes with the most similar ingredients (Jaccard similarity, found via MinHash buckets).")
+    @GetMapping(path = "/{recipeId}/similar", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<SimilarRecipe>> getSimilarRecipes(@ApiParam(value = "recipe db id", example = "1")
+                                                                 @PathVariable Integer recipeId,
+                                                                 @ApiParam(value = "maximum number of results", example = "10")
+                                                                 @RequestParam(value = "k", defaultValue = "10") Integer k) throws ElementNotFoundException {
+
+        return ResponseEntity.ok(recipeDB.selectSimilarRecipes(recipeId, KeysetPage.validate(k)));
+    }
+
+    @ApiOperation("Suggest recipes by the start of the name.")
+    @GetMapping(path = "/suggest", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<Suggestion>> suggestRecipes(@ApiParam(value = "start of the recipe name", example = "Spa")
+                                                           @RequestParam(value = "prefix") String prefix,
+                                                           @ApiParam(value = "maximum number of results", example = "10")
+                                                           @RequestParam(value = "limit", defaultValue = "10") Integer limit) {
+
+        return ResponseEntity.ok(recipeDB.selectRecipeSuggestions(prefix, KeysetPage.validate(limit)));
+    }
+
+    @ApiOperation("Get all existing recipe categories. Supports 'If-None-Match' with the returned ETag.")
     @GetMapping(path = "/categories", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<String>> getCategories() {
+    public ResponseEntity<List<String>> getCategories(WebRequest request) {
 
-        return ResponseEntity.ok(recipeDB.selectDistinctCategories());
+        CategoryRegistry.Snapshot categories = recipeDB.selectDistinctCategories();
+        if (request.checkNotModified(categories.getETag())) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(categories.getETag()).body(categories.getCategories());
     }
 
     // === PUT =========================================================================================================
 
+    @ApiOperation("Rebuild the in-memory recipe categories from the database.")
+    @PreAuthorize("hasRole('ADMIN')")
+    @PutMapping(path = "/categories/rebuild", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<String>> rebuildCategories() {
+
+        CategoryRegistry.Snapshot categories = recipeDB.rebuildCategories();
+        return ResponseEntity.ok().eTag(categories.getETag()).body(categories.getCategories());
+    }
+
     @ApiOperation("Update recipe item in the database.")
     @PutMapping(path = "/update-item/{recipeId}", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<Recipe.Item> updateRecipeItem(@ApiParam(value = "recipe db id", example = "1")
@@ -1,9 +1,11 @@
 package com.freshplanner.api.controller;
 
+import com.freshplanner.api.controller.model.RecipeMatch;
 import com.freshplanner.api.controller.model.Storage;
 import com.freshplanner.api.exception.ElementNotFoundException;
 import com.freshplanner.api.exception.NoAccessException;
 import com.freshplanner.api.security.SecurityContext;
+import com.freshplanner.api.service.recipe.RecipeDB;
 import com.freshplanner.api.service.storage.StorageDB;
 import com.freshplanner.api.service.storage.StorageEntity;
 import io.swagger.annotations.ApiOperation;
@@ -17,16 +19,18 @@ import org.springframework.web.bind.annotation.*;
 import java.util.List;
 import java.util.stream.Collectors;
 
-@CrossOrigin(origins = "*", maxAge = 3600)
+@CrossOrigin(origins = "*", maxAge = 3600, exposedHeaders = KeysetPage.NEXT_HEADER)
 @RestController
 @RequestMapping("/storage")
 public class StorageController {
 
     private final StorageDB storageDB;
+    private final RecipeDB recipeDB;
 
     @Autowired
-    public StorageController(StorageDB storageDB) {
+    public StorageController(StorageDB storageDB, RecipeDB recipeDB) {
         this.storageDB = storageDB;
+        this.recipeDB = recipeDB;
     }
 
     // === POST ========================================================================================================
@@ -54,14 +58,18 @@ public class StorageController {
     // === GET =========================================================================================================
 
     @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
-    @ApiOperation("Get all storages from the user.")
+    @ApiOperation("Get a page of storages from the user. The cursor for the next page is in the header '" + KeysetPage.NEXT_HEADER + "'.")
     @GetMapping(path = "", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<Storage>> getUserStorages() {
+    public ResponseEntity<List<Storage>> getUserStorages(@ApiParam(value = "last storage db id of the previous page", example = "0")
+                                                         @RequestParam(value = "after", defaultValue = KeysetPage.DEFAULT_AFTER) Integer after,
+                                                         @ApiParam(value = "page size", example = "100")
+                                                         @RequestParam(value = "limit", defaultValue = KeysetPage.DEFAULT_LIMIT) Integer limit) {
         String username = SecurityContext.extractUsername();
 
-        return ResponseEntity.ok(
-                storageDB.selectUserStorages(username)
-                        .stream().map(StorageEntity::mapToModel).collect(Collectors.toList()));
+        return KeysetPage.response(
+                storageDB.selectUserStorages(username, after, KeysetPage.validate(limit))
+                        .stream().map(StorageEntity::mapToModel).collect(Collectors.toList()),
+                Storage::getId, limit);
     }
 
     @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
@@ -74,6 +82,30 @@ public class StorageController {
         return ResponseEntity.ok(storageDB.selectStorageById(username, storageId).mapToModel());
     }
 
+    @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
+    @ApiOperation("Get the items of the storage that were added, updated or removed since the revision. UserEntity validation for storage ownership.")
+    @GetMapping(path = "/{storageId}/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Storage.Changes> getStorageChanges(@ApiParam(value = "storage db id", example = "1")
+                                                             @PathVariable Integer storageId,
+                                                             @ApiParam(value = "revision the client already has", example = "0")
+                                                             @RequestParam(value = "since", defaultValue = "0") Long since) throws ElementNotFoundException, NoAccessException {
+        String username = SecurityContext.extractUsername();
+
+        return ResponseEntity.ok(storageDB.selectStorageChanges(username, storageId, since));
+    }
+
+    @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
+    @ApiOperation("Get the recipes that can be cooked with the items of the storage, most covered first. UserEntity validation for storage ownership.")
+    @GetMapping(path = "/cookable-recipes/{storageId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<RecipeMatch>> getCookableRecipes(@ApiParam(value = "storage db id", example = "1")
+                                                                @PathVariable Integer storageId,
+                                                                @ApiParam(value = "maximum number of results", example = "20")
+                                                                @RequestParam(value = "limit", defaultValue = "20") Integer limit) throws ElementNotFoundException, NoAccessException {
+        String username = SecurityContext.extractUsername();
+
+        return ResponseEntity.ok(recipeDB.selectCookableRecipes(storageDB.selectStorageItemCounts(username, storageId), KeysetPage.validate(limit)));
+    }
+
     // === PUT =========================================================================================================
 
     @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
@@ -120,6 +152,31 @@ public class StorageController {
         return ResponseEntity.ok(storageDB.updateStorageItem(username, storageId, itemModel).mapToModel());
     }
 
+    @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
+    @ApiOperation("Insert or update many storage items at once (the count gets replaced). UserEntity validation for storage ownership.")
+    @PutMapping(path = "/{storageId}/items", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Storage> upsertStorageItems(@ApiParam(value = "storage db id", example = "1")
+                                                      @PathVariable Integer storageId,
+                                                      @RequestBody List<Storage.Item> items) throws ElementNotFoundException, NoAccessException {
+        String username = SecurityContext.extractUsername();
+
+        return ResponseEntity.ok(storageDB.upsertStorageItems(username, storageId, items).mapToModel());
+    }
+
+    @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
+    @ApiOperation("Add a delta to the count of a storage item in one atomic update (never below 0, a missing item only gets inserted for a positive delta). UserEntity validation for storage ownership.")
+    @PutMapping(path = "/{storageId}/items/{productId}/count", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Storage.Item> updateStorageItemCount(@ApiParam(value = "storage db id", example = "1")
+                                                               @PathVariable Integer storageId,
+                                                               @ApiParam(value = "product db id", example = "1")
+                                                               @PathVariable Integer productId,
+                                                               @ApiParam(value = "change of the count", example = "-1")
+                                                               @RequestParam(value = "delta") Float delta) throws ElementNotFoundException, NoAccessException {
+        String username = SecurityContext.extractUsername();
+
+        return ResponseEntity.ok(storageDB.updateStorageItemCount(username, storageId, productId, delta).mapToModel());
+    }
+
     // === DELETE ======================================================================================================
 
     @PreAuthorize("hasRole('USER') or hasRole('EDITOR') or hasRole('ADMIN')")
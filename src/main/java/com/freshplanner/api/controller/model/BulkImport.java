@@ -0,0 +1,41 @@
+package com.freshplanner.api.controller.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@ApiModel
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkImport {
+
+    @ApiModelProperty(value = "Number of inserted rows", example = "998")
+    private Integer inserted;
+    @ApiModelProperty(value = "Number of rejected rows", example = "2")
+    private Integer failed;
+    @ApiModelProperty(value = "Duration of the import in milliseconds", example = "420")
+    private Long durationMs;
+    @ApiModelProperty(value = "Processed rows per second", example = "2380.9")
+    private Double rowsPerSecond;
+    @ApiModelProperty(value = "List of rejected rows")
+    private List<Failure> failures;
+
+    @Data
+    @ApiModel
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Failure {
+
+        @ApiModelProperty(value = "Row number in the input (first data row is 1)", example = "17")
+        private Integer row;
+        @ApiModelProperty(value = "Name of the rejected product", example = "Apple")
+        private String name;
+        @ApiModelProperty(value = "Reason of the rejection", example = "Product name already exists")
+        private String reason;
+    }
+}
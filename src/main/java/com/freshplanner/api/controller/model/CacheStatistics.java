@@ -0,0 +1,25 @@
+package com.freshplanner.api.controller.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@ApiModel
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheStatistics {
+
+    @ApiModelProperty(value = "Current number of cached elements", example = "250")
+    private Integer size;
+    @ApiModelProperty(value = "Maximum number of cached elements", example = "10000")
+    private Integer maxSize;
+    @ApiModelProperty(value = "Requests served from the cache", example = "900")
+    private Long hits;
+    @ApiModelProperty(value = "Requests loaded from the database", example = "100")
+    private Long misses;
+    @ApiModelProperty(value = "Elements removed because the cache was full", example = "0")
+    private Long evictions;
+}
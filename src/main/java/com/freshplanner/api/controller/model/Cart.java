@@ -23,6 +23,10 @@ public class Cart {
     private List<String> users;
     @ApiModelProperty(value = "List of items")
     private List<Item> items;
+    @ApiModelProperty(value = "Version of the name and the owners for optimistic locking, updates with an outdated version fail with 409 (items change with the count delta and the revision instead)", example = "0")
+    private Long version;
+    @ApiModelProperty(value = "Revision of the items, start for GET /cart/{cartId}/changes?since=", example = "0")
+    private Long revision;
 
     @Data
     @ApiModel
@@ -43,4 +47,20 @@ public class Cart {
         @ApiModelProperty(value = "Unit of the product in the package", example = "GRAM")
         private Unit unit;
     }
+
+    @Data
+    @ApiModel
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Changes {
+
+        @ApiModelProperty(value = "CartEntity database id", example = "1")
+        private Integer cartId;
+        @ApiModelProperty(value = "Current revision, since for the next request", example = "2")
+        private Long revision;
+        @ApiModelProperty(value = "Added and updated items")
+        private List<Item> items;
+        @ApiModelProperty(value = "Product ids of the removed items")
+        private List<Integer> removedProductIds;
+    }
 }
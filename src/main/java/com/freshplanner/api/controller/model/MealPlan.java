@@ -0,0 +1,31 @@
+package com.freshplanner.api.controller.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@ApiModel
+@NoArgsConstructor
+@AllArgsConstructor
+public class MealPlan {
+
+    @ApiModelProperty(value = "Planned recipes, the same recipe may be planned more than once")
+    private List<Entry> recipes;
+
+    @Data
+    @ApiModel
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Entry {
+
+        @ApiModelProperty(value = "Recipe database id", example = "1")
+        private Integer recipeId;
+        @ApiModelProperty(value = "Multiplier for the recipe item counts", example = "2")
+        private Integer servings;
+    }
+}
@@ -0,0 +1,26 @@
+package com.freshplanner.api.controller.model;
+
+import com.freshplanner.api.enums.Nutrient;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@ApiModel
+@NoArgsConstructor
+@AllArgsConstructor
+public class NutritionStatistics {
+
+    @ApiModelProperty(value = "Nutrient of the statistics", example = "PROTEIN")
+    private Nutrient nutrient;
+    @ApiModelProperty(value = "Number of products with a value", example = "250")
+    private Integer count;
+    @ApiModelProperty(value = "Smallest value", example = "0")
+    private Float min;
+    @ApiModelProperty(value = "Largest value", example = "80")
+    private Float max;
+    @ApiModelProperty(value = "Average value", example = "12.5")
+    private Float mean;
+}
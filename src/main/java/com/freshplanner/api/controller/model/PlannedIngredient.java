@@ -0,0 +1,30 @@
+package com.freshplanner.api.controller.model;
+
+import com.freshplanner.api.enums.Unit;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@ApiModel
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlannedIngredient {
+
+    @ApiModelProperty(value = "Product database id", example = "1")
+    private Integer productId;
+    @ApiModelProperty(value = "Name of the product", example = "Product Name")
+    private String productName;
+    @ApiModelProperty(value = "Category of the product", example = "Category Name")
+    private String category;
+    @ApiModelProperty(value = "Unit of the product", example = "GRAM")
+    private Unit unit;
+    @ApiModelProperty(value = "Summed count over all planned recipes", example = "750")
+    private Float count;
+    @ApiModelProperty(value = "Count in the compared storage (null without storage)", example = "500")
+    private Float available;
+    @ApiModelProperty(value = "Count that is not in the compared storage (null without storage)", example = "250")
+    private Float missing;
+}
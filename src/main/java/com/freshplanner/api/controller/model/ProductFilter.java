@@ -0,0 +1,33 @@
+package com.freshplanner.api.controller.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@ApiModel
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductFilter {
+
+    @ApiModelProperty(value = "Smallest kCal per 100g", example = "0")
+    private Float kcalMin;
+    @ApiModelProperty(value = "Largest kCal per 100g", example = "400")
+    private Float kcalMax;
+    @ApiModelProperty(value = "Smallest carbohydrates per 100g", example = "0")
+    private Float carbohydratesMin;
+    @ApiModelProperty(value = "Largest carbohydrates per 100g", example = "50")
+    private Float carbohydratesMax;
+    @ApiModelProperty(value = "Smallest protein per 100g", example = "10")
+    private Float proteinMin;
+    @ApiModelProperty(value = "Largest protein per 100g", example = "100")
+    private Float proteinMax;
+    @ApiModelProperty(value = "Smallest fat per 100g", example = "0")
+    private Float fatMin;
+    @ApiModelProperty(value = "Largest fat per 100g", example = "20")
+    private Float fatMax;
+    @ApiModelProperty(value = "Exact category of the product", example = "Fruit")
+    private String category;
+}
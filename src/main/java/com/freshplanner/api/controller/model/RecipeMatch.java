@@ -0,0 +1,27 @@
+package com.freshplanner.api.controller.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@ApiModel
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecipeMatch {
+
+    @ApiModelProperty(value = "Recipe database id", example = "1")
+    private Integer recipeId;
+    @ApiModelProperty(value = "Name of the recipe", example = "Pasta with Pesto")
+    private String recipeName;
+    @ApiModelProperty(value = "Number of ingredients of the recipe", example = "4")
+    private Integer items;
+    @ApiModelProperty(value = "Ingredients that are available in any amount", example = "3")
+    private Integer available;
+    @ApiModelProperty(value = "Ingredients that are available in the required amount", example = "2")
+    private Integer sufficient;
+    @ApiModelProperty(value = "Share of the ingredients that are available in the required amount", example = "0.5")
+    private Float coverage;
+}
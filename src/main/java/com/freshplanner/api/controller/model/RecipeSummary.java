@@ -0,0 +1,31 @@
+package com.freshplanner.api.controller.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@ApiModel
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecipeSummary {
+
+    @ApiModelProperty(value = "Recipe database id", example = "1")
+    private Integer id;
+    @ApiModelProperty(value = "Name of the recipe", example = "Pasta with Pesto")
+    private String name;
+    @ApiModelProperty(value = "Category of the recipe", example = "Pasta")
+    private String category;
+    @ApiModelProperty(value = "Duration of the recipe", example = "15")
+    private Integer duration;
+    @ApiModelProperty(value = "Summed kcal of the items (null if not yet calculated)", example = "650")
+    private Float kcal;
+    @ApiModelProperty(value = "Summed carbohydrates of the items (null if not yet calculated)", example = "80")
+    private Float carbohydrates;
+    @ApiModelProperty(value = "Summed protein of the items (null if not yet calculated)", example = "20")
+    private Float protein;
+    @ApiModelProperty(value = "Summed fat of the items (null if not yet calculated)", example = "25")
+    private Float fat;
+}
@@ -0,0 +1,23 @@
+package com.freshplanner.api.controller.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@ApiModel
+@NoArgsConstructor
+@AllArgsConstructor
+public class SimilarRecipe {
+
+    @ApiModelProperty(value = "Recipe database id", example = "2")
+    private Integer recipeId;
+    @ApiModelProperty(value = "Name of the recipe", example = "Pasta with Pesto")
+    private String recipeName;
+    @ApiModelProperty(value = "Category of the recipe", example = "Pasta")
+    private String category;
+    @ApiModelProperty(value = "Jaccard similarity of the ingredient sets", example = "0.6")
+    private Float similarity;
+}
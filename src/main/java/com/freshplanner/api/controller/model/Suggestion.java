@@ -0,0 +1,19 @@
+package com.freshplanner.api.controller.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@ApiModel
+@NoArgsConstructor
+@AllArgsConstructor
+public class Suggestion {
+
+    @ApiModelProperty(value = "Database id of the suggested element", example = "1")
+    private Integer id;
+    @ApiModelProperty(value = "Name of the suggested element", example = "Apple")
+    private String name;
+}
@@ -0,0 +1,25 @@
+package com.freshplanner.api.enums;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public enum Match {
+    ALL, ANY;
+
+    private static Stream<Match> streamAll() {
+        return Arrays.stream(Match.class.getEnumConstants());
+    }
+
+    public static List<Match> getAll() throws RuntimeException {
+        return streamAll().collect(Collectors.toList());
+    }
+
+    @JsonCreator // decodes @RequestBody
+    public static Match decode(String value) throws RuntimeException {
+        return EnumExtension.decode(streamAll(), value);
+    }
+}
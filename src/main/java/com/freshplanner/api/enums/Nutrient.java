@@ -0,0 +1,25 @@
+package com.freshplanner.api.enums;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public enum Nutrient {
+    KCAL, CARBOHYDRATES, PROTEIN, FAT, PACKAGE_SIZE;
+
+    private static Stream<Nutrient> streamAll() {
+        return Arrays.stream(Nutrient.class.getEnumConstants());
+    }
+
+    public static List<Nutrient> getAll() throws RuntimeException {
+        return streamAll().collect(Collectors.toList());
+    }
+
+    @JsonCreator // decodes @RequestBody
+    public static Nutrient decode(String value) throws RuntimeException {
+        return EnumExtension.decode(streamAll(), value);
+    }
+}
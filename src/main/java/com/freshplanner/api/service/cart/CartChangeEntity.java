@@ -0,0 +1,56 @@
+package com.freshplanner.api.service.cart;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * <h2>Cart Change Entity</h2>
+ * Last revision of the cart that changed the item, written through the ChangeLog of the CartDB.
+ * No relations, so the tombstones of removed items do not depend on the item or product rows.
+ */
+@NoArgsConstructor
+@Getter
+@Entity(name = "CartChange")
+@Table(name = "cart_changes", indexes = @Index(name = "cart_changes_revision", columnList = "cart_id, revision"))
+@IdClass(CartChangeEntity.Key.class)
+public class CartChangeEntity implements Serializable {
+
+    @Id
+    @Column(name = "cart_id", nullable = false)
+    private Integer cartId;
+
+    @Id
+    @Column(name = "product_id", nullable = false)
+    private Integer productId;
+
+    @Column(name = "revision", nullable = false)
+    private Long revision;
+
+    @Column(name = "deleted", nullable = false)
+    private Boolean deleted;
+
+    @Override
+    public String toString() {
+        return "CartChangeEntity{" +
+                "cartId=" + cartId +
+                ", productId=" + productId +
+                ", revision=" + revision +
+                ", deleted=" + deleted +
+                '}';
+    }
+
+    // === ID CLASS ====================================================================================================
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Integer cartId;
+        private Integer productId;
+    }
+}
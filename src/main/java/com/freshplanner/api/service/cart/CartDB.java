@@ -1,32 +1,67 @@
 package com.freshplanner.api.service.cart;
 
 import com.freshplanner.api.controller.model.Cart;
+import com.freshplanner.api.enums.Unit;
 import com.freshplanner.api.exception.ElementNotFoundException;
 import com.freshplanner.api.exception.NoAccessException;
 import com.freshplanner.api.service.product.ProductService;
+import com.freshplanner.api.service.recipe.RecipeService;
 import com.freshplanner.api.service.user.UserEntity;
 import com.freshplanner.api.service.user.UserService;
+import com.freshplanner.api.utility.ChangeLog;
+import com.freshplanner.api.utility.MembershipCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Component;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Component
 public class CartDB {
 
+    private static final String ADD_ITEM_SQL = "insert into cart_items (cart_id, product_id, count) values (?, ?, ?) " +
+            "on duplicate key update count = count + values(count)";
+    private static final String UPSERT_ITEM_SQL = "insert into cart_items (cart_id, product_id, count) values (?, ?, ?) " +
+            "on duplicate key update count = values(count)";
+
     private final CartRepo cartRepo;
     private final CartItemRepo cartItemRepo;
     private final ProductService productService;
+    private final RecipeService recipeService;
     private final UserService userService;
+    private final JdbcTemplate jdbcTemplate;
+    private final MembershipCache members;
+    private final ChangeLog changes;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Autowired
-    public CartDB(CartRepo cartRepo, CartItemRepo cartItemRpo, ProductService productService, UserService userService) {
+    public CartDB(CartRepo cartRepo, CartItemRepo cartItemRpo, ProductService productService, RecipeService recipeService,
+                  UserService userService, JdbcTemplate jdbcTemplate, @Value("${app.settings.cache.membership.ttl-ms}") long membershipTtl) {
         this.cartRepo = cartRepo;
         this.cartItemRepo = cartItemRpo;
         this.productService = productService;
+        this.recipeService = recipeService;
         this.userService = userService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.members = new MembershipCache(membershipTtl, cartRepo::findCartIdsOfUser);
+        this.changes = new ChangeLog(jdbcTemplate, CartEntity.class, "cart_items", "cart_changes", "cart_id");
     }
 
     // === SELECT ======================================================================================================
@@ -41,10 +76,23 @@ public class CartDB {
      * @throws NoAccessException        if user is no owner
      */
     public CartEntity selectCartById(String username, Integer cartId) throws ElementNotFoundException, NoAccessException {
-        CartEntity cart = selectCartById(cartId);
-        if (cart.containsUser(username)) {
-            return cart;
-        } else {
+        checkAccess(username, cartId);
+        return selectCartById(cartId);
+    }
+
+    /**
+     * Decides the access with the {@link MembershipCache} before anything gets loaded.
+     *
+     * @param username as owner
+     * @param cartId   database id
+     * @throws ElementNotFoundException if id does not exist
+     * @throws NoAccessException        if user is no owner
+     */
+    private void checkAccess(String username, Integer cartId) throws ElementNotFoundException, NoAccessException {
+        if (!members.isMember(username, cartId)) {
+            if (!cartRepo.existsById(cartId)) {
+                throw new ElementNotFoundException(CartEntity.class, cartId.toString());
+            }
             throw new NoAccessException(username, CartEntity.class, cartId.toString());
         }
     }
@@ -59,13 +107,17 @@ public class CartDB {
     }
 
     /**
-     * SELECT cart WHERE user
+     * SELECT cart WHERE user AND id > after ORDER BY id LIMIT limit
+     * (two statements: the ids of the page, then the carts with users, items and products)
      *
      * @param username as owner
-     * @return list with result objects
+     * @param after    id of the last object of the previous page
+     * @param limit    page size
+     * @return list with the objects of the page
      */
-    public List<CartEntity> selectUserCarts(String username) {
-        return cartRepo.findCartsByUsername(username);
+    public List<CartEntity> selectUserCarts(String username, Integer after, int limit) {
+        List<Integer> cartIds = cartRepo.findCartIdsByUsername(username, after, limit);
+        return cartIds.isEmpty() ? Collections.emptyList() : cartRepo.findCartsWithItemsByIds(cartIds);
     }
 
     private CartItemEntity selectCartItemById(Integer cartId, Integer productId) throws ElementNotFoundException {
@@ -78,6 +130,42 @@ public class CartDB {
         }
     }
 
+    /**
+     * SELECT cartItem WHERE cartId AND revision > since
+     * <p>Revision and changes are read in one transaction, so they belong to the same state. Revision 0 gets all
+     * current items.</p>
+     *
+     * @param username as owner
+     * @param cartId   database id
+     * @param since    revision the client already has (0 for all items)
+     * @return added, updated and removed items since the revision
+     * @throws ElementNotFoundException if id does not exist
+     * @throws NoAccessException        if user is no owner
+     * @throws IllegalArgumentException if the revision is negative or newer than the current one
+     */
+    @Transactional
+    public Cart.Changes selectCartChanges(String username, Integer cartId, long since)
+            throws ElementNotFoundException, NoAccessException, IllegalArgumentException {
+        checkAccess(username, cartId);
+        long revision = changes.selectRevision(cartId);
+        if (since < 0 || since > revision) {
+            throw new IllegalArgumentException("Revision must be between 0 and " + revision + " but was " + since);
+        }
+        List<Cart.Item> items = new ArrayList<>();
+        List<Integer> removedProductIds = new ArrayList<>();
+        List<Cart.Item> rows = since == 0
+                ? changes.selectItems(cartId, CartDB::mapChange)
+                : changes.selectChanges(cartId, since, CartDB::mapChange);
+        for (Cart.Item item : rows) {
+            if (item.getCount() != null) {
+                items.add(item);
+            } else {
+                removedProductIds.add(item.getProductId());
+            }
+        }
+        return new Cart.Changes(cartId, revision, items, removedProductIds);
+    }
+
     // === INSERT ======================================================================================================
 
     /**
@@ -91,7 +179,9 @@ public class CartDB {
     @Transactional
     public CartEntity insertCart(String username, Cart cartModel) throws ElementNotFoundException {
         UserEntity user = userService.getUserByName(username);
-        return cartRepo.save(new CartEntity(user, cartModel));
+        CartEntity cart = cartRepo.save(new CartEntity(user, cartModel));
+        members.invalidate(username);
+        return cart;
     }
 
     /**
@@ -107,12 +197,68 @@ public class CartDB {
     @Transactional
     public CartEntity insertCartItem(String username, int cartId, Cart.Item cartItemModel) throws ElementNotFoundException, NoAccessException {
         CartEntity cart = selectCartById(username, cartId);
-        CartItemEntity item = cartItemRepo.save(new CartItemEntity(
+        long revision = changes.nextRevision(cartId);
+        cartItemRepo.save(new CartItemEntity(
                 cart,
                 productService.selectProductById(cartItemModel.getProductId()),
                 cartItemModel.getCount()));
-        cart.getCartItems().add(item);
-        return cart;
+        changes.record(cartId, revision, Collections.singletonList(cartItemModel.getProductId()), false);
+        return reloadCart(cartId);
+    }
+
+    /**
+     * INSERT cartItem FOR EACH recipeItem ON DUPLICATE KEY UPDATE count = count + recipeItem.count * servings
+     * <p>Constant number of queries: access check, recipe items, one batch and the load of the cart.</p>
+     *
+     * @param username as owner
+     * @param cartId   linked database id
+     * @param recipeId database id of the recipe to add
+     * @param servings multiplier for the item counts of the recipe
+     * @return updated object
+     * @throws ElementNotFoundException if id does not exist
+     * @throws NoAccessException        if user is no owner
+     * @throws IllegalArgumentException if the servings are not positive
+     */
+    @Transactional
+    public CartEntity insertRecipeItems(String username, Integer cartId, Integer recipeId, int servings)
+            throws ElementNotFoundException, NoAccessException, IllegalArgumentException {
+        if (servings < 1) {
+            throw new IllegalArgumentException("Servings must be positive but was " + servings);
+        }
+        checkAccess(username, cartId);
+        Map<Integer, Float> counts = new LinkedHashMap<>();
+        recipeService.selectRecipeIngredients(recipeId).forEach((productId, count) -> counts.put(productId, count * servings));
+        return batchItems(ADD_ITEM_SQL, cartId, counts);
+    }
+
+    /**
+     * INSERT cartItem FOR EACH itemModel ON DUPLICATE KEY UPDATE count = itemModel.count
+     * <p>Constant number of queries: access check, products, one batch and the load of the cart.</p>
+     *
+     * @param username   as owner
+     * @param cartId     linked database id
+     * @param itemModels product ids with the new counts
+     * @return updated object
+     * @throws ElementNotFoundException with all product ids that do not exist or if the cart does not exist
+     * @throws NoAccessException        if user is no owner
+     * @throws IllegalArgumentException if a product id is missing or appears twice
+     */
+    @Transactional
+    public CartEntity upsertCartItems(String username, Integer cartId, List<Cart.Item> itemModels)
+            throws ElementNotFoundException, NoAccessException, IllegalArgumentException {
+        checkAccess(username, cartId);
+        Map<Integer, Float> counts = new LinkedHashMap<>();
+        for (Cart.Item itemModel : itemModels) {
+            if (itemModel.getProductId() == null) {
+                throw new IllegalArgumentException("Cart item without product id");
+            }
+            Float count = itemModel.getCount() != null && itemModel.getCount() >= 0 ? itemModel.getCount() : 0f;
+            if (counts.put(itemModel.getProductId(), count) != null) {
+                throw new IllegalArgumentException("Product " + itemModel.getProductId() + " appears more than once");
+            }
+        }
+        productService.selectProductsByIds(counts.keySet());
+        return batchItems(UPSERT_ITEM_SQL, cartId, counts);
     }
 
     // === UPDATE ======================================================================================================
@@ -131,7 +277,9 @@ public class CartDB {
     public CartEntity updateAddUser(String usernameOwner, int cartId, String usernameMember) throws ElementNotFoundException, NoAccessException {
         CartEntity cart = selectCartById(usernameOwner, cartId);
         UserEntity user = userService.getUserByName(usernameMember);
-        return cartRepo.save(cart.addUser(user));
+        cart = cartRepo.save(cart.addUser(user));
+        members.invalidate(user.getName());
+        return cart;
     }
 
     /**
@@ -148,21 +296,34 @@ public class CartDB {
     public CartEntity updateRemoveUser(String usernameOwner, int cartId, String usernameMember) throws ElementNotFoundException, NoAccessException {
         CartEntity cart = selectCartById(usernameOwner, cartId);
         UserEntity user = userService.getUserByName(usernameMember);
-        return cartRepo.save(cart.removeUser(user));
+        cart = cartRepo.save(cart.removeUser(user));
+        members.invalidate(user.getName());
+        return cart;
     }
 
     /**
-     * UPDATE cart
+     * UPDATE cart SET name, version = version + 1 WHERE id AND version = cartModel.version
+     * <p>Optimistic if the model has a version: check and write are one statement, so an outdated version always
+     * fails. Without a version the last write wins. The version covers the name and the members only, items change
+     * through the atomic item operations (count delta, upsert) and are tracked by the revision.</p>
      *
      * @param username  as owner
      * @param cartModel with input data
      * @return updated object
-     * @throws NoAccessException        if user is no owner
-     * @throws ElementNotFoundException if id does not exist
+     * @throws NoAccessException                       if user is no owner
+     * @throws ElementNotFoundException                if id does not exist
+     * @throws ObjectOptimisticLockingFailureException if the version of the model is outdated
      */
+    @Transactional
     public CartEntity updateCart(String username, Cart cartModel) throws NoAccessException, ElementNotFoundException {
         CartEntity cart = selectCartById(username, cartModel.getId());
-        return cartRepo.save(cart.update(cartModel));
+        if (cartModel.getVersion() == null) {
+            return cartRepo.save(cart.update(cartModel));
+        }
+        if (cartRepo.updateNameIfVersion(cart.getId(), cartModel.getName(), cartModel.getVersion()) == 0) {
+            throw new ObjectOptimisticLockingFailureException(CartEntity.class, cart.getId());
+        }
+        return reloadCart(cart.getId());
     }
 
     /**
@@ -175,12 +336,45 @@ public class CartDB {
      * @throws ElementNotFoundException if id does not exist
      * @throws NoAccessException        if user is no owner
      */
+    @Transactional
     public CartItemEntity updateCartItem(String username, Integer cartId, Cart.Item itemModel) throws ElementNotFoundException, NoAccessException {
+        checkAccess(username, cartId);
         CartItemEntity item = this.selectCartItemById(cartId, itemModel.getProductId());
-        if (!item.getCart().containsUser(username)) {
-            throw new NoAccessException(username, CartEntity.class, cartId.toString());
+        long revision = changes.nextRevision(cartId);
+        item = cartItemRepo.save(item.update(itemModel));
+        changes.record(cartId, revision, Collections.singletonList(itemModel.getProductId()), false);
+        return item;
+    }
+
+    /**
+     * UPDATE cartItem SET count = GREATEST(count + delta, 0) WHERE cartId and productId
+     * <p>One atomic statement instead of read-modify-write, a missing item only gets inserted for a positive delta.</p>
+     *
+     * @param username  as owner
+     * @param cartId    linked database id
+     * @param productId linked database id
+     * @param delta     change of the count, the result is never negative
+     * @return updated object
+     * @throws ElementNotFoundException if id does not exist or the item is missing for a delta <= 0
+     * @throws NoAccessException        if user is no owner
+     * @throws IllegalArgumentException if the delta is not a finite number
+     */
+    @Transactional
+    public CartItemEntity updateCartItemCount(String username, Integer cartId, Integer productId, float delta)
+            throws ElementNotFoundException, NoAccessException, IllegalArgumentException {
+        if (!Float.isFinite(delta)) {
+            throw new IllegalArgumentException("Delta must be a finite number but was " + delta);
+        }
+        checkAccess(username, cartId);
+        productService.selectProductById(productId);
+        long revision = changes.nextRevision(cartId);
+        if (delta > 0) {
+            cartItemRepo.addToCount(cartId, productId, delta);
+        } else if (cartItemRepo.updateCount(cartId, productId, delta) == 0) {
+            throw new ElementNotFoundException(CartItemEntity.class, new CartItemEntity.Key(cartId, productId).toString());
         }
-        return cartItemRepo.save(item.update(itemModel));
+        changes.record(cartId, revision, Collections.singletonList(productId), false);
+        return selectCartItemById(cartId, productId);
     }
 
     // === DELETE ======================================================================================================
@@ -195,12 +389,15 @@ public class CartDB {
      * @throws ElementNotFoundException if id does not exist
      * @throws NoAccessException        if user is no owner
      */
+    @Transactional
     public CartEntity deleteCartItem(String username, Integer cartId, Integer productId) throws ElementNotFoundException, NoAccessException {
         CartEntity cart = this.selectCartById(username, cartId);
         CartItemEntity item = this.selectCartItemById(cartId, productId);
+        long revision = changes.nextRevision(cartId);
         cartItemRepo.delete(item);
         cart.getCartItems().remove(item);
-        return cart;
+        changes.record(cartId, revision, Collections.singletonList(productId), true);
+        return reloadCart(cartId);
     }
 
     /**
@@ -212,9 +409,59 @@ public class CartDB {
      * @throws ElementNotFoundException if id does not exist
      * @throws NoAccessException        if user is no owner
      */
+    @Transactional
     public CartEntity deleteCartById(String username, Integer cartId) throws ElementNotFoundException, NoAccessException {
         CartEntity cart = this.selectCartById(username, cartId);
         cartRepo.delete(cart);
+        changes.delete(cartId);
+        members.invalidate(cart.getUsers().stream().map(UserEntity::getName).collect(Collectors.toList()));
         return cart;
     }
+
+    // === INTERNAL ====================================================================================================
+
+    private CartEntity batchItems(String sql, Integer cartId, Map<Integer, Float> counts) throws ElementNotFoundException {
+        long revision = changes.nextRevision(cartId);
+        List<Map.Entry<Integer, Float>> rows = new ArrayList<>(counts.entrySet());
+        entityManager.flush();
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int i) throws SQLException {
+                statement.setInt(1, cartId);
+                statement.setInt(2, rows.get(i).getKey());
+                statement.setFloat(3, rows.get(i).getValue());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+        changes.record(cartId, revision, counts.keySet(), false);
+        return reloadCart(cartId);
+    }
+
+    private CartEntity reloadCart(Integer cartId) throws ElementNotFoundException {
+        // the loaded cart still holds the old revision and item counts
+        entityManager.flush();
+        entityManager.clear();
+        return selectCartById(cartId);
+    }
+
+    /**
+     * Row of the {@link ChangeLog}, the count is null if the item got removed.
+     */
+    private static Cart.Item mapChange(ResultSet row, int rowNumber) throws SQLException {
+        Cart.Item item = new Cart.Item();
+        item.setProductId(row.getInt("product_id"));
+        item.setProductName(row.getString("name"));
+        item.setCategory(row.getString("category"));
+        float packageSize = row.getFloat("package_size");
+        item.setPackageSize(row.wasNull() ? null : packageSize);
+        float count = row.getFloat("count");
+        item.setCount(row.wasNull() ? null : count);
+        int unit = row.getInt("unit");
+        item.setUnit(row.wasNull() ? null : Unit.values()[unit]);
+        return item;
+    }
 }
@@ -32,6 +32,16 @@ public class CartEntity {
     @Column(name = "name", nullable = false)
     private String name;
 
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint not null default 0")
+    @Setter(AccessLevel.NONE)
+    private Long version;
+
+    // written by the ChangeLog only
+    @Column(name = "revision", nullable = false, insertable = false, updatable = false, columnDefinition = "bigint not null default 0")
+    @Setter(AccessLevel.NONE)
+    private Long revision;
+
     @ManyToMany(cascade = CascadeType.MERGE, fetch = FetchType.EAGER)
     @JoinTable(name = "user_carts",
             joinColumns = {@JoinColumn(name = "cart_id", referencedColumnName = "id")},
@@ -47,6 +57,8 @@ public class CartEntity {
         Cart cart = new Cart();
         cart.setId(id);
         cart.setName(name);
+        cart.setVersion(version);
+        cart.setRevision(revision != null ? revision : 0L);
         cart.setUsers(users.stream().map(UserEntity::getName).collect(Collectors.toList()));
         cart.setItems(cartItems.stream().map(CartItemEntity::mapToModel).collect(Collectors.toList()));
         return cart;
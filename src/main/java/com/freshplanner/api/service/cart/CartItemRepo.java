@@ -1,8 +1,23 @@
 package com.freshplanner.api.service.cart;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
 interface CartItemRepo extends JpaRepository<CartItemEntity, CartItemEntity.Key> {
+
+    // one atomic statement, concurrent deltas on the same item can not overwrite each other (only for delta > 0)
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "insert into cart_items (cart_id, product_id, count) values (:cartId, :productId, greatest(:delta, 0))" +
+            " on duplicate key update count = greatest(count + :delta, 0)", nativeQuery = true)
+    int addToCount(@Param("cartId") Integer cartId, @Param("productId") Integer productId, @Param("delta") Float delta);
+
+    // like addToCount, but never inserts: returns 0 if the item does not exist
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "update cart_items set count = greatest(count + :delta, 0) where cart_id = :cartId and product_id = :productId",
+            nativeQuery = true)
+    int updateCount(@Param("cartId") Integer cartId, @Param("productId") Integer productId, @Param("delta") Float delta);
 }
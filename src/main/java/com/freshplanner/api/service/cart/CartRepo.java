@@ -1,16 +1,35 @@
 package com.freshplanner.api.service.cart;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 interface CartRepo extends JpaRepository<CartEntity, Integer> {
 
+    // check and write in one statement, the version also moves if the name stays the same
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Cart c set c.name = coalesce(:name, c.name), c.version = c.version + 1 where c.id = :cartId and c.version = :version")
+    int updateNameIfVersion(@Param("cartId") Integer cartId, @Param("name") String name, @Param("version") Long version);
+
     // native query because of non-case-sensitivity on the username
-    @Query(value = "select * from carts c join user_carts uc on c.id = uc.cart_id where uc.user_id = :username", nativeQuery = true)
-    List<CartEntity> findCartsByUsername(@Param("username") String username);
+    @Query(value = "select c.id from carts c join user_carts uc on c.id = uc.cart_id where uc.user_id = :username" +
+            " and c.id > :after order by c.id limit :limit", nativeQuery = true)
+    List<Integer> findCartIdsByUsername(@Param("username") String username, @Param("after") Integer after, @Param("limit") Integer limit);
+
+    @Query(value = "select uc.cart_id from user_carts uc where uc.user_id = :username", nativeQuery = true)
+    List<Integer> findCartIdsOfUser(@Param("username") String username);
+
+    // one statement for the carts with users, items and products, instead of secondary selects per cart
+    @QueryHints(@QueryHint(name = "hibernate.query.passDistinctThrough", value = "false"))
+    @Query("select distinct c from Cart c left join fetch c.users u left join fetch u.roles" +
+            " left join fetch c.cartItems i left join fetch i.product where c.id in :cartIds order by c.id")
+    List<CartEntity> findCartsWithItemsByIds(Collection<Integer> cartIds);
 }
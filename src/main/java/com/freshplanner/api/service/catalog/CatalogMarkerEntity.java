@@ -0,0 +1,31 @@
+package com.freshplanner.api.service.catalog;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * <h2>Catalog Marker Entity</h2>
+ * Single row with the persisted version of the product and recipe catalog, bumped by every catalog write.
+ * Table-Data will be initialized through 'src/main/resources/data.sql'.
+ */
+@NoArgsConstructor
+@Getter
+@Entity(name = "CatalogMarker")
+@Table(name = "catalog_marker")
+public class CatalogMarkerEntity implements Serializable {
+
+    @Id
+    @Column(name = "id", nullable = false)
+    private Integer id;
+
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    @Override
+    public String toString() {
+        return "CatalogMarker{id=" + id + ", version=" + version + "}";
+    }
+}
@@ -0,0 +1,329 @@
+package com.freshplanner.api.service.catalog;
+
+import com.freshplanner.api.controller.model.Product;
+import com.freshplanner.api.controller.model.Recipe;
+import com.freshplanner.api.enums.Unit;
+import com.freshplanner.api.service.product.ProductEntity;
+import com.freshplanner.api.service.recipe.RecipeEntity;
+import com.freshplanner.api.utility.ApiLogger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * <h2>Catalog Snapshot</h2>
+ * Binary copy of the product and recipe catalog on the local disk, so the in-memory indexes come up without a full
+ * table scan.
+ * <ul>
+ *     <li>Written on shutdown and on a schedule, but only if the {@link CatalogMarkerEntity} changed.</li>
+ *     <li>Loaded (memory-mapped) at boot and only used if its marker equals the one in the database.</li>
+ *     <li>The marker is read before the data, so a snapshot is never tagged newer than its content.</li>
+ * </ul>
+ * Layout (big endian): header, products, recipes. The header holds magic, format version, marker, CRC32 of
+ * everything after the header, product count, recipe count and the offset of the recipes. Strings are stored as
+ * length and UTF-8 bytes (length -1 for null), missing numbers as NaN / {@link Integer#MIN_VALUE}.
+ * <p>Required: application.properties -> app.settings.catalog.snapshot.*</p>
+ */
+@Component
+public class CatalogSnapshot {
+
+    private static final int MAGIC = 0x46504353; // "FPCS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 36;
+    private static final int MISSING_INT = Integer.MIN_VALUE;
+
+    @Value("${app.settings.catalog.snapshot.path}")
+    private String path;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final CatalogVersion catalogVersion;
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile long writtenMarker = -1;
+
+    @Autowired
+    public CatalogSnapshot(CatalogVersion catalogVersion, PlatformTransactionManager transactionManager) {
+        this.catalogVersion = catalogVersion;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    // === LOAD ========================================================================================================
+
+    /**
+     * @return products of the snapshot or empty if there is no current snapshot
+     */
+    public Optional<List<Product>> loadProducts() {
+        return load((buffer, header) -> {
+            buffer.position(HEADER_SIZE);
+            List<Product> products = new ArrayList<>(header.productCount);
+            for (int i = 0; i < header.productCount; i++) {
+                products.add(readProduct(buffer));
+            }
+            return products;
+        });
+    }
+
+    /**
+     * @return recipes of the snapshot or empty if there is no current snapshot
+     */
+    public Optional<List<Recipe>> loadRecipes() {
+        return load((buffer, header) -> {
+            buffer.position(header.recipeOffset);
+            List<Recipe> recipes = new ArrayList<>(header.recipeCount);
+            for (int i = 0; i < header.recipeCount; i++) {
+                recipes.add(readRecipe(buffer));
+            }
+            return recipes;
+        });
+    }
+
+    private <T> Optional<T> load(SectionReader<T> reader) {
+        Path file = Paths.get(path);
+        if (!Files.isReadable(file)) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Header header = readHeader(buffer);
+            long marker = catalogVersion.selectMarker();
+            if (header.marker != marker) {
+                ApiLogger.info("Catalog snapshot is outdated (marker " + header.marker + ", database " + marker + ")");
+                return Optional.empty();
+            }
+            T result = reader.read(buffer, header);
+            writtenMarker = marker;
+            return Optional.of(result);
+        } catch (IOException | RuntimeException e) {
+            ApiLogger.warning("Catalog snapshot " + file + " is not usable: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static Header readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("no catalog snapshot");
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("unsupported format version " + buffer.getInt(4));
+        }
+        Header header = new Header(buffer.getLong(8), buffer.getInt(24), buffer.getInt(28), buffer.getInt(32));
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(HEADER_SIZE);
+        crc.update(payload);
+        if (crc.getValue() != buffer.getLong(16)) {
+            throw new IOException("checksum mismatch");
+        }
+        return header;
+    }
+
+    // === WRITE =======================================================================================================
+
+    @Scheduled(initialDelayString = "${app.settings.catalog.snapshot.interval-ms}",
+            fixedDelayString = "${app.settings.catalog.snapshot.interval-ms}")
+    public void writeScheduled() {
+        write();
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public void writeOnShutdown() {
+        write();
+    }
+
+    /**
+     * Writes the snapshot if the catalog changed since the last load or write.
+     */
+    public synchronized void write() {
+        try {
+            long marker = catalogVersion.selectMarker();
+            if (marker == writtenMarker) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            byte[] content = transactionTemplate.execute(status -> serialize(marker));
+            Path file = Paths.get(path);
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, content);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writtenMarker = marker;
+            ApiLogger.info("Wrote catalog snapshot with marker " + marker + " (" + content.length + " bytes) in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException | RuntimeException e) {
+            ApiLogger.error("Writing the catalog snapshot failed: " + e.getMessage());
+        }
+    }
+
+    private byte[] serialize(long marker) {
+        List<ProductEntity> products = entityManager
+                .createQuery("select p from Product p order by p.id", ProductEntity.class)
+                .getResultList();
+        List<RecipeEntity> recipes = entityManager
+                .createQuery("select distinct r from Recipe r left join fetch r.recipeItems order by r.id", RecipeEntity.class)
+                .getResultList();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(new byte[HEADER_SIZE]);
+            for (ProductEntity product : products) {
+                writeProduct(out, product.mapToModel());
+            }
+            int recipeOffset = out.size();
+            for (RecipeEntity recipe : recipes) {
+                writeRecipe(out, recipe.mapToModel());
+            }
+            out.flush();
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), HEADER_SIZE, buffer.limit() - HEADER_SIZE);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            buffer.putLong(8, marker);
+            buffer.putLong(16, crc.getValue());
+            buffer.putInt(24, products.size());
+            buffer.putInt(28, recipes.size());
+            buffer.putInt(32, recipeOffset);
+            return buffer.array();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // === RECORDS =====================================================================================================
+
+    private static void writeProduct(DataOutputStream out, Product product) throws IOException {
+        out.writeInt(product.getId());
+        writeString(out, product.getName());
+        writeString(out, product.getCategory());
+        writeUnit(out, product.getUnit());
+        writeFloat(out, product.getPackageSize());
+        writeFloat(out, product.getKcal());
+        writeFloat(out, product.getCarbohydrates());
+        writeFloat(out, product.getProtein());
+        writeFloat(out, product.getFat());
+    }
+
+    private static Product readProduct(ByteBuffer in) {
+        return new Product(in.getInt(), readString(in), readString(in), readUnit(in),
+                readFloat(in), readFloat(in), readFloat(in), readFloat(in), readFloat(in));
+    }
+
+    private static void writeRecipe(DataOutputStream out, Recipe recipe) throws IOException {
+        out.writeInt(recipe.getId());
+        writeString(out, recipe.getName());
+        writeString(out, recipe.getCategory());
+        out.writeInt(recipe.getDuration() != null ? recipe.getDuration() : MISSING_INT);
+        writeString(out, recipe.getDescription());
+        writeFloat(out, recipe.getKcal());
+        writeFloat(out, recipe.getCarbohydrates());
+        writeFloat(out, recipe.getProtein());
+        writeFloat(out, recipe.getFat());
+        out.writeInt(recipe.getItems().size());
+        for (Recipe.Item item : recipe.getItems()) {
+            out.writeInt(item.getProductId());
+            writeString(out, item.getProductName());
+            writeFloat(out, item.getCount());
+            writeUnit(out, item.getUnit());
+            writeString(out, item.getDescription());
+        }
+    }
+
+    private static Recipe readRecipe(ByteBuffer in) {
+        Recipe recipe = new Recipe();
+        recipe.setId(in.getInt());
+        recipe.setName(readString(in));
+        recipe.setCategory(readString(in));
+        int duration = in.getInt();
+        recipe.setDuration(duration != MISSING_INT ? duration : null);
+        recipe.setDescription(readString(in));
+        recipe.setKcal(readFloat(in));
+        recipe.setCarbohydrates(readFloat(in));
+        recipe.setProtein(readFloat(in));
+        recipe.setFat(readFloat(in));
+        int itemCount = in.getInt();
+        List<Recipe.Item> items = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            items.add(new Recipe.Item(in.getInt(), readString(in), readFloat(in), readUnit(in), readString(in)));
+        }
+        recipe.setItems(items);
+        return recipe;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFloat(DataOutputStream out, Float value) throws IOException {
+        out.writeFloat(value != null ? value : Float.NaN);
+    }
+
+    private static Float readFloat(ByteBuffer in) {
+        float value = in.getFloat();
+        return Float.isNaN(value) ? null : value;
+    }
+
+    private static void writeUnit(DataOutputStream out, Unit unit) throws IOException {
+        out.writeByte(unit != null ? unit.ordinal() : -1);
+    }
+
+    private static Unit readUnit(ByteBuffer in) {
+        byte ordinal = in.get();
+        return ordinal >= 0 ? Unit.values()[ordinal] : null;
+    }
+
+    // === INTERNAL ====================================================================================================
+
+    private static class Header {
+        private final long marker;
+        private final int productCount;
+        private final int recipeCount;
+        private final int recipeOffset;
+
+        private Header(long marker, int productCount, int recipeCount, int recipeOffset) {
+            this.marker = marker;
+            this.productCount = productCount;
+            this.recipeCount = recipeCount;
+            this.recipeOffset = recipeOffset;
+        }
+    }
+
+    @FunctionalInterface
+    private interface SectionReader<T> {
+        T read(ByteBuffer buffer, Header header);
+    }
+}
@@ -0,0 +1,86 @@
+package com.freshplanner.api.service.catalog;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h2>Catalog Version</h2>
+ * Persisted counter over all product and recipe changes ({@link CatalogMarkerEntity}), used as strong ETag for the
+ * catalog endpoints and to tell whether a {@link CatalogSnapshot} is still current.
+ * <ul>
+ *     <li>Every write bumps the marker in its own transaction, so all nodes and restarts agree on the version of
+ *     the same catalog.</li>
+ *     <li>The marker is cached and read again after the commit of a write on this node and at the latest after the
+ *     refresh interval, which bounds how long writes of other nodes stay unnoticed.</li>
+ *     <li>The cached value never goes back and is only taken from committed data, so no reader can tag old data
+ *     with a new version. Readers have to take the version before they read the data.</li>
+ * </ul>
+ * <p>Required: application.properties -> app.settings.catalog.version.refresh-ms</p>
+ */
+@Component
+public class CatalogVersion {
+
+    private static final String SELECT_MARKER_SQL = "select version from catalog_marker where id = 1";
+    private static final String INCREMENT_MARKER_SQL = "update catalog_marker set version = version + 1 where id = 1";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long refreshMillis;
+    private final AtomicLong version = new AtomicLong(-1);
+    private volatile long refreshAt;
+
+    @Autowired
+    public CatalogVersion(JdbcTemplate jdbcTemplate, @Value("${app.settings.catalog.version.refresh-ms}") long refreshMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * @return current version (persisted marker, at most the refresh interval old)
+     */
+    public long get() {
+        if (refreshAt <= System.currentTimeMillis()) {
+            refresh();
+        }
+        return version.get();
+    }
+
+    /**
+     * @return persisted version of the catalog, 0 if the marker is missing
+     */
+    public long selectMarker() {
+        List<Long> marker = jdbcTemplate.queryForList(SELECT_MARKER_SQL, Long.class);
+        return marker.isEmpty() ? 0L : marker.get(0);
+    }
+
+    /**
+     * Marks the catalog as changed, visible to all nodes with the commit of the current transaction.
+     */
+    public void increment() {
+        jdbcTemplate.update(INCREMENT_MARKER_SQL);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    refreshAt = 0;
+                }
+            });
+        } else {
+            refreshAt = 0;
+        }
+    }
+
+    // === INTERNAL ====================================================================================================
+
+    private void refresh() {
+        long marker = selectMarker();
+        version.accumulateAndGet(marker, Math::max);
+        refreshAt = System.currentTimeMillis() + refreshMillis;
+    }
+}
@@ -0,0 +1,106 @@
+package com.freshplanner.api.service.planner;
+
+import com.freshplanner.api.controller.model.MealPlan;
+import com.freshplanner.api.controller.model.PlannedIngredient;
+import com.freshplanner.api.exception.ElementNotFoundException;
+import com.freshplanner.api.service.product.ProductEntity;
+import com.freshplanner.api.service.product.ProductService;
+import com.freshplanner.api.service.recipe.RecipeService;
+import com.freshplanner.api.utility.IntFloatMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <h2>Planner DB</h2>
+ * Aggregates the ingredients of a meal plan into one list per product.
+ * <ul>
+ *     <li>All recipe items of the plan are loaded with one query, the products with a second one.</li>
+ *     <li>The counts get summed in a primitive {@link IntFloatMap}, large plans in parallel with one map per thread.</li>
+ * </ul>
+ */
+@Component
+public class PlannerDB {
+
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    private final RecipeService recipeService;
+    private final ProductService productService;
+
+    @Autowired
+    public PlannerDB(RecipeService recipeService, ProductService productService) {
+        this.recipeService = recipeService;
+        this.productService = productService;
+    }
+
+    // === SELECT ======================================================================================================
+
+    /**
+     * SELECT product, SUM(recipeItem.count * servings) WHERE recipe IN mealPlan GROUP BY product
+     *
+     * @param mealPlan  recipes with servings
+     * @param available count per product id to compare with (e.g. the items of a storage) or null
+     * @return one object per product (and therefore unit), sorted by category and name
+     * @throws ElementNotFoundException with all recipe ids that do not exist
+     * @throws IllegalArgumentException if the plan is empty or an entry is incomplete
+     */
+    public List<PlannedIngredient> selectPlanIngredients(MealPlan mealPlan, Map<Integer, Float> available)
+            throws ElementNotFoundException, IllegalArgumentException {
+        List<MealPlan.Entry> entries = validate(mealPlan);
+        Map<Integer, Map<Integer, Float>> ingredients = recipeService.selectRecipeIngredients(
+                entries.stream().map(MealPlan.Entry::getRecipeId).collect(Collectors.toSet()));
+        IntFloatMap totals = aggregate(entries, ingredients);
+
+        List<Integer> productIds = Arrays.stream(totals.keys()).boxed().collect(Collectors.toList());
+        return productService.selectProductsByIds(productIds).stream()
+                .map(product -> toIngredient(product, totals.getOrDefault(product.getId(), 0f), available))
+                .sorted(Comparator.comparing(PlannedIngredient::getCategory, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+                        .thenComparing(PlannedIngredient::getProductName, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+                        .thenComparing(PlannedIngredient::getProductId))
+                .collect(Collectors.toList());
+    }
+
+    // === INTERNAL ====================================================================================================
+
+    static IntFloatMap aggregate(List<MealPlan.Entry> entries, Map<Integer, Map<Integer, Float>> ingredients) {
+        Stream<MealPlan.Entry> stream = entries.size() >= PARALLEL_THRESHOLD ? entries.parallelStream() : entries.stream();
+        return stream.collect(IntFloatMap::new, (totals, entry) -> {
+            int servings = servingsOf(entry);
+            ingredients.get(entry.getRecipeId()).forEach((productId, count) -> totals.add(productId, count * servings));
+        }, IntFloatMap::addAll);
+    }
+
+    private static List<MealPlan.Entry> validate(MealPlan mealPlan) throws IllegalArgumentException {
+        if (mealPlan == null || mealPlan.getRecipes() == null || mealPlan.getRecipes().isEmpty()) {
+            throw new IllegalArgumentException("Meal plan must contain at least one recipe");
+        }
+        for (MealPlan.Entry entry : mealPlan.getRecipes()) {
+            if (entry == null || entry.getRecipeId() == null) {
+                throw new IllegalArgumentException("Meal plan entry without recipe id");
+            }
+            if (servingsOf(entry) < 1) {
+                throw new IllegalArgumentException("Servings must be positive but was " + entry.getServings());
+            }
+        }
+        return mealPlan.getRecipes();
+    }
+
+    // one serving by default, without changing the request
+    private static int servingsOf(MealPlan.Entry entry) {
+        return entry.getServings() != null ? entry.getServings() : 1;
+    }
+
+    private static PlannedIngredient toIngredient(ProductEntity product, float count, Map<Integer, Float> available) {
+        PlannedIngredient ingredient = new PlannedIngredient(product.getId(), product.getName(), product.getCategory(),
+                product.getUnit(), count, null, null);
+        if (available != null) {
+            float inStock = available.getOrDefault(product.getId(), 0f);
+            ingredient.setAvailable(inStock);
+            ingredient.setMissing(Math.max(0f, count - inStock));
+        }
+        return ingredient;
+    }
+}
@@ -0,0 +1,367 @@
+package com.freshplanner.api.service.product;
+
+import com.freshplanner.api.controller.model.NutritionStatistics;
+import com.freshplanner.api.controller.model.Product;
+import com.freshplanner.api.enums.Nutrient;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <h2>Nutrition Store</h2>
+ * Columnar copy of the product nutrition values: one primitive float[] per {@link Nutrient}, indexed by product id.
+ * <ul>
+ *     <li>Product ids are generated in ascending order, so the columns stay dense.</li>
+ *     <li>Missing values are stored as NaN, deleted products are cleared in {@link #present}.</li>
+ *     <li>Scans run over the arrays without hydrating entities or allocating per row.</li>
+ *     <li>Range filters run on per-nutrient sorted keys (value bits and id in one long), which get rebuilt
+ *     lazily by the first filter after a write.</li>
+ * </ul>
+ */
+class NutritionStore {
+
+    private static final Nutrient[] NUTRIENTS = Nutrient.values();
+
+    private final float[][] columns = new float[NUTRIENTS.length][0];
+    private int[] categoryColumn = new int[0];
+    private final Map<String, Integer> categoryCodes = new HashMap<>();
+    private final BitSet present = new BitSet();
+    private final long[][] sorted = new long[NUTRIENTS.length][0];
+    private volatile boolean sortedDirty;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds or replaces the values of the product.
+     *
+     * @param product inserted or updated object
+     */
+    void put(Product product) {
+        lock.writeLock().lock();
+        try {
+            int id = product.getId();
+            ensureCapacity(id + 1);
+            for (Nutrient nutrient : NUTRIENTS) {
+                Float value = valueOf(product, nutrient);
+                columns[nutrient.ordinal()][id] = value != null ? value + 0.0f : Float.NaN; // + 0.0f turns -0.0 into 0.0
+            }
+            categoryColumn[id] = product.getCategory() != null
+                    ? categoryCodes.computeIfAbsent(normalize(product.getCategory()), key -> categoryCodes.size())
+                    : -1;
+            present.set(id);
+            sortedDirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param productId database id of the deleted object
+     */
+    void remove(Integer productId) {
+        lock.writeLock().lock();
+        try {
+            present.clear(productId);
+            sortedDirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all products.
+     */
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            present.clear();
+            Arrays.setAll(columns, i -> new float[0]);
+            categoryColumn = new int[0];
+            categoryCodes.clear();
+            sortedDirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param nutrient  column to sort by
+     * @param ascending smallest values first instead of largest
+     * @param min       smallest accepted value
+     * @param max       largest accepted value
+     * @param limit     maximum number of results
+     * @return ids of the products in the range, sorted by the value (ties by id)
+     */
+    int[] top(Nutrient nutrient, boolean ascending, float min, float max, int limit) {
+        lock.readLock().lock();
+        try {
+            float[] column = columns[nutrient.ordinal()];
+            // bounded heap, the root is the product that ranks last
+            int capacity = Math.min(limit, present.cardinality());
+            int[] heap = new int[capacity];
+            int size = 0;
+            for (int id = present.nextSetBit(0); id >= 0; id = present.nextSetBit(id + 1)) {
+                float value = column[id];
+                if (Float.isNaN(value) || value < min || value > max) {
+                    continue;
+                }
+                if (size < capacity) {
+                    heap[size] = id;
+                    siftUp(heap, size++, column, ascending);
+                } else if (capacity > 0 && ranksBefore(id, heap[0], column, ascending)) {
+                    heap[0] = id;
+                    siftDown(heap, size, column, ascending);
+                }
+            }
+            int[] result = new int[size];
+            for (int last = size - 1; last >= 0; last--) {
+                result[last] = heap[0];
+                heap[0] = heap[last];
+                siftDown(heap, last, column, ascending);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param nutrient column to aggregate
+     * @return count, min, max and mean over all products with a value
+     */
+    NutritionStatistics statistics(Nutrient nutrient) {
+        lock.readLock().lock();
+        try {
+            float[] column = columns[nutrient.ordinal()];
+            int count = 0;
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            double sum = 0;
+            for (int id = present.nextSetBit(0); id >= 0; id = present.nextSetBit(id + 1)) {
+                float value = column[id];
+                if (!Float.isNaN(value)) {
+                    count++;
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                    sum += value;
+                }
+            }
+            return count == 0
+                    ? new NutritionStatistics(nutrient, 0, null, null, null)
+                    : new NutritionStatistics(nutrient, count, min, max, (float) (sum / count));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param min      smallest accepted value per nutrient ordinal
+     * @param max      largest accepted value per nutrient ordinal
+     * @param category exact category (case-insensitive) or null
+     * @param after    id of the last product of the previous page
+     * @param limit    page size
+     * @return ids of the matching products in ascending order
+     */
+    int[] filter(float[] min, float[] max, String category, int after, int limit) {
+        lockSorted();
+        try {
+            int categoryCode = -1;
+            if (category != null) {
+                Integer code = categoryCodes.get(normalize(category));
+                if (code == null) {
+                    return new int[0];
+                }
+                categoryCode = code;
+            }
+            // drive the scan with the narrowest constrained nutrient
+            int driver = -1;
+            int from = 0;
+            int to = 0;
+            for (Nutrient nutrient : NUTRIENTS) {
+                int n = nutrient.ordinal();
+                if (min[n] == Float.NEGATIVE_INFINITY && max[n] == Float.POSITIVE_INFINITY) {
+                    continue;
+                }
+                int lower = lowerBound(sorted[n], (long) sortable(min[n]) << 32);
+                int upper = lowerBound(sorted[n], ((long) sortable(max[n]) + 1) << 32);
+                if (driver < 0 || upper - lower < to - from) {
+                    driver = n;
+                    from = lower;
+                    to = Math.max(lower, upper);
+                }
+            }
+            if (driver < 0) {
+                int[] page = new int[Math.min(limit, present.cardinality())];
+                int size = 0;
+                for (int id = present.nextSetBit(Math.max(0, after + 1)); id >= 0 && size < limit; id = present.nextSetBit(id + 1)) {
+                    if (categoryCode < 0 || categoryColumn[id] == categoryCode) {
+                        page[size++] = id;
+                    }
+                }
+                return Arrays.copyOf(page, size);
+            }
+            int[] candidates = new int[to - from];
+            int size = 0;
+            for (int i = from; i < to; i++) {
+                int id = (int) sorted[driver][i];
+                if (id > after && matches(id, min, max, categoryCode)) {
+                    candidates[size++] = id;
+                }
+            }
+            Arrays.sort(candidates, 0, size);
+            return Arrays.copyOf(candidates, Math.min(size, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // === INTERNAL ====================================================================================================
+
+    private boolean matches(int id, float[] min, float[] max, int categoryCode) {
+        if (categoryCode >= 0 && categoryColumn[id] != categoryCode) {
+            return false;
+        }
+        for (int n = 0; n < columns.length; n++) {
+            float value = columns[n][id];
+            if (min[n] == Float.NEGATIVE_INFINITY && max[n] == Float.POSITIVE_INFINITY) {
+                continue;
+            }
+            if (Float.isNaN(value) || value < min[n] || value > max[n]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Acquires the read lock with up-to-date sorted keys.
+     */
+    private void lockSorted() {
+        lock.readLock().lock();
+        if (!sortedDirty) {
+            return;
+        }
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        try {
+            if (sortedDirty) {
+                for (int n = 0; n < columns.length; n++) {
+                    sorted[n] = sortKeys(columns[n]);
+                }
+                sortedDirty = false;
+            }
+            lock.readLock().lock(); // downgrade
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private long[] sortKeys(float[] column) {
+        long[] keys = new long[present.cardinality()];
+        int size = 0;
+        for (int id = present.nextSetBit(0); id >= 0; id = present.nextSetBit(id + 1)) {
+            if (!Float.isNaN(column[id])) {
+                keys[size++] = ((long) sortable(column[id]) << 32) | id;
+            }
+        }
+        keys = Arrays.copyOf(keys, size);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * @return int with the same order as the float
+     */
+    private static int sortable(float value) {
+        int bits = Float.floatToIntBits(value + 0.0f);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
+    private static int lowerBound(long[] keys, long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static String normalize(String category) {
+        return category.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (columns[0].length >= capacity) {
+            return;
+        }
+        int grown = Math.max(capacity, columns[0].length * 2);
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Arrays.copyOf(columns[i], grown);
+        }
+        categoryColumn = Arrays.copyOf(categoryColumn, grown);
+    }
+
+    private static boolean ranksBefore(int a, int b, float[] column, boolean ascending) {
+        if (column[a] != column[b]) {
+            return ascending ? column[a] < column[b] : column[a] > column[b];
+        }
+        return a < b;
+    }
+
+    private static void siftUp(int[] heap, int index, float[] column, boolean ascending) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!ranksBefore(heap[parent], heap[index], column, ascending)) {
+                return;
+            }
+            swap(heap, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, float[] column, boolean ascending) {
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && ranksBefore(heap[child], heap[child + 1], column, ascending)) {
+                child++;
+            }
+            if (!ranksBefore(heap[index], heap[child], column, ascending)) {
+                return;
+            }
+            swap(heap, index, child);
+            index = child;
+        }
+    }
+
+    private static void swap(int[] heap, int a, int b) {
+        int temp = heap[a];
+        heap[a] = heap[b];
+        heap[b] = temp;
+    }
+
+    static Float valueOf(Product product, Nutrient nutrient) {
+        switch (nutrient) {
+            case KCAL:
+                return product.getKcal();
+            case CARBOHYDRATES:
+                return product.getCarbohydrates();
+            case PROTEIN:
+                return product.getProtein();
+            case FAT:
+                return product.getFat();
+            case PACKAGE_SIZE:
+                return product.getPackageSize();
+            default:
+                throw new IllegalArgumentException("Unknown nutrient: " + nutrient);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.freshplanner.api.service.product;
+
+import com.freshplanner.api.controller.model.CacheStatistics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * <h2>Product Cache</h2>
+ * Bounded LRU cache of {@link ProductEntity}s in front of the {@link ProductRepo}.
+ * Entries get invalidated by every write in {@link ProductDB}, again after the commit of the write, so a load of
+ * the old row that overlaps with the transaction can not stay cached. Loads that overlap with an invalidation are
+ * not cached at all (see {@link #stamp()}). Writes of other nodes are not seen, the TTL bounds how long an entry
+ * can stay outdated.
+ * <p>Required: application.properties -> app.settings.cache.product.max-size, app.settings.cache.product.ttl-ms</p>
+ */
+@Component
+class ProductCache {
+
+    @Value("${app.settings.cache.product.max-size}")
+    private Integer maxSize;
+
+    @Value("${app.settings.cache.product.ttl-ms}")
+    private Long ttlMillis;
+
+    private final Map<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * @param productId database id
+     * @return cached object or empty if it has to be loaded
+     */
+    synchronized Optional<ProductEntity> get(Integer productId) {
+        Entry entry = entries.get(productId);
+        if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(productId);
+            entry = null;
+        }
+        if (entry != null) {
+            hits++;
+            return Optional.of(entry.product);
+        }
+        misses++;
+        return Optional.empty();
+    }
+
+    /**
+     * @return stamp to take before loading an object for {@link #put(ProductEntity, long)}
+     */
+    synchronized long stamp() {
+        return invalidations;
+    }
+
+    /**
+     * Adds the object and evicts the least recently used ones if the cache is full.
+     * Skipped if an invalidation happened since the stamp, the object may be outdated.
+     *
+     * @param product loaded object
+     * @param stamp   taken before the object was loaded
+     */
+    synchronized void put(ProductEntity product, long stamp) {
+        if (stamp != invalidations) {
+            return;
+        }
+        entries.put(product.getId(), new Entry(product, System.currentTimeMillis() + ttlMillis));
+        while (entries.size() > maxSize) {
+            Integer eldest = entries.keySet().iterator().next();
+            entries.remove(eldest);
+            evictions++;
+        }
+    }
+
+    /**
+     * Drops the object now and after the commit of the current transaction.
+     *
+     * @param productId database id of the changed object
+     */
+    void invalidate(Integer productId) {
+        invalidateNow(productId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidateNow(productId);
+                }
+            });
+        }
+    }
+
+    private synchronized void invalidateNow(Integer productId) {
+        invalidations++;
+        entries.remove(productId);
+    }
+
+    synchronized CacheStatistics getStatistics() {
+        return new CacheStatistics(entries.size(), maxSize, hits, misses, evictions);
+    }
+
+    private static class Entry {
+        private final ProductEntity product;
+        private final long expiresAt;
+
+        private Entry(ProductEntity product, long expiresAt) {
+            this.product = product;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
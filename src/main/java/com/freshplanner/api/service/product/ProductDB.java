@@ -1,22 +1,70 @@
 package com.freshplanner.api.service.product;
 
+import com.freshplanner.api.controller.model.BulkImport;
+import com.freshplanner.api.controller.model.CacheStatistics;
+import com.freshplanner.api.controller.model.NutritionStatistics;
 import com.freshplanner.api.controller.model.Product;
+import com.freshplanner.api.controller.model.ProductFilter;
+import com.freshplanner.api.controller.model.Suggestion;
+import com.freshplanner.api.enums.Nutrient;
 import com.freshplanner.api.exception.ElementNotFoundException;
+import com.freshplanner.api.service.catalog.CatalogVersion;
+import com.freshplanner.api.utility.AfterCommit;
+import com.freshplanner.api.utility.ApiLogger;
+import com.freshplanner.api.utility.CategoryRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
-import java.util.List;
-import java.util.Optional;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Component
 public class ProductDB implements ProductService {
 
+    private static final String INSERT_SQL = "insert into products" +
+            " (name, category, unit, package_size, kcal, carbohydrates, protein, fat) values (?, ?, ?, ?, ?, ?, ?, ?)";
+
     private final ProductRepo productRepo;
+    private final ProductCache productCache;
+    private final ProductIndex productIndex;
+    private final CatalogVersion catalogVersion;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.settings.product.bulk-batch-size}")
+    private Integer bulkBatchSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Autowired
-    public ProductDB(ProductRepo productRepo) {
+    public ProductDB(ProductRepo productRepo, ProductCache productCache, ProductIndex productIndex, CatalogVersion catalogVersion,
+                     ApplicationEventPublisher eventPublisher, JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
         this.productRepo = productRepo;
+        this.productCache = productCache;
+        this.productIndex = productIndex;
+        this.catalogVersion = catalogVersion;
+        this.eventPublisher = eventPublisher;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     // === SELECT ======================================================================================================
@@ -30,6 +78,17 @@ public class ProductDB implements ProductService {
      */
     @Override
     public ProductEntity selectProductById(Integer productId) throws ElementNotFoundException {
+        Optional<ProductEntity> cached = productCache.get(productId);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        long stamp = productCache.stamp();
+        ProductEntity product = this.findProductById(productId);
+        productCache.put(product, stamp);
+        return product;
+    }
+
+    private ProductEntity findProductById(Integer productId) throws ElementNotFoundException {
         Optional<ProductEntity> product = productRepo.findById(productId);
         if (product.isPresent()) {
             return product.get();
@@ -39,41 +98,183 @@ public class ProductDB implements ProductService {
     }
 
     /**
-     * SELECT product WHERE LIKE productName
+     * SELECT product WHERE productId IN productIds (one query)
+     *
+     * @param productIds database ids
+     * @return result objects in the order of the ids
+     * @throws ElementNotFoundException with all ids that do not exist
+     */
+    @Override
+    public List<ProductEntity> selectProductsByIds(Collection<Integer> productIds) throws ElementNotFoundException {
+        List<Integer> ids = new ArrayList<>(productIds);
+        List<ProductEntity> products = selectProductsInOrder(ids);
+        if (products.size() < new HashSet<>(ids).size()) {
+            Set<Integer> missing = new TreeSet<>(ids);
+            products.forEach(product -> missing.remove(product.getId()));
+            throw new ElementNotFoundException(ProductEntity.class, missing.stream().map(String::valueOf).collect(Collectors.joining(", ")));
+        }
+        return products;
+    }
+
+    /**
+     * SELECT product WHERE LIKE productName (answered by the in-memory {@link ProductIndex})
      *
      * @param productName partial name
-     * @return list with result objects
+     * @param limit       maximum number of results
+     * @return list with result objects, best match first
+     */
+    public List<ProductEntity> selectProductsByName(String productName, int limit) {
+        return selectProductsInOrder(productIndex.searchByName(productName, limit));
+    }
+
+    /**
+     * SELECT product WHERE name within edit distance (answered by the in-memory {@link ProductIndex})
+     *
+     * @param productName name with typos
+     * @param maxDistance allowed edits per word, 1 or 2
+     * @param limit       maximum number of results
+     * @return list with result objects, closest match first
+     * @throws IllegalArgumentException if the distance is out of range
      */
-    public List<ProductEntity> selectProductsByName(String productName) {
-        return productRepo.searchByName(productName);
+    public List<ProductEntity> selectProductsByNameFuzzy(String productName, int maxDistance, int limit) throws IllegalArgumentException {
+        return selectProductsInOrder(productIndex.searchByNameFuzzy(productName, maxDistance, limit));
     }
 
     /**
-     * SELECT product WHERE LIKE productCategory
+     * SELECT product WHERE LIKE productCategory (answered by the in-memory {@link ProductIndex})
      *
      * @param productCategory partial name
-     * @return list with result objects
+     * @param limit           maximum number of results
+     * @return list with result objects, best match first
+     */
+    public List<ProductEntity> selectProductsByCategory(String productCategory, int limit) {
+        return selectProductsInOrder(productIndex.searchByCategory(productCategory, limit));
+    }
+
+    /**
+     * SELECT product-name WHERE LIKE prefix% (answered by the in-memory {@link ProductIndex})
+     *
+     * @param prefix start of the name
+     * @param limit  maximum number of results
+     * @return matching names in alphabetical order
      */
-    public List<ProductEntity> selectProductsByCategory(String productCategory) {
-        return productRepo.searchByCategory(productCategory);
+    public List<Suggestion> selectProductSuggestions(String prefix, int limit) {
+        return productIndex.suggestByName(prefix, limit);
     }
 
     /**
-     * SELECT product
+     * SELECT product WHERE nutrient BETWEEN min AND max ORDER BY nutrient LIMIT limit
+     * (answered by the columnar {@link NutritionStore})
      *
-     * @return list with all objects
+     * @param nutrient  value to sort by
+     * @param ascending smallest values first instead of largest
+     * @param min       smallest accepted value or null
+     * @param max       largest accepted value or null
+     * @param limit     maximum number of results
+     * @return list with result objects in value order
+     * @throws IllegalArgumentException if the limit is not positive
      */
-    public List<ProductEntity> selectAllProducts() {
-        return productRepo.findAll();
+    public List<ProductEntity> selectProductsByNutrient(Nutrient nutrient, boolean ascending, Float min, Float max, int limit)
+            throws IllegalArgumentException {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive but was " + limit);
+        }
+        return selectProductsInOrder(productIndex.topByNutrient(nutrient, ascending,
+                min != null ? min : Float.NEGATIVE_INFINITY, max != null ? max : Float.POSITIVE_INFINITY, limit));
     }
 
     /**
-     * SELECT DISTINCT product-category
+     * SELECT product WHERE nutrients BETWEEN min AND max AND category = category AND id > after ORDER BY id LIMIT limit
+     * (answered by the sorted keys of the {@link NutritionStore})
      *
-     * @return list with all objects
+     * @param filter nutrient ranges and category, null fields are not filtered
+     * @param after  id of the last object of the previous page
+     * @param limit  page size
+     * @return list with result objects in ascending id order
      */
-    public List<String> selectDistinctCategories() {
-        return productRepo.findAllCategories();
+    public List<ProductEntity> selectProductsByFilter(ProductFilter filter, Integer after, int limit) {
+        return selectProductsInOrder(productIndex.filter(filter, after, limit));
+    }
+
+    /**
+     * SELECT COUNT(nutrient), MIN(nutrient), MAX(nutrient), AVG(nutrient) FROM product
+     * (answered by the columnar {@link NutritionStore})
+     *
+     * @param nutrient value to aggregate
+     * @return statistics over all products
+     */
+    public NutritionStatistics selectNutritionStatistics(Nutrient nutrient) {
+        return productIndex.nutritionStatistics(nutrient);
+    }
+
+    private List<ProductEntity> selectProductsInOrder(List<Integer> productIds) {
+        Map<Integer, ProductEntity> products = productRepo.findAllById(productIds).stream()
+                .collect(Collectors.toMap(ProductEntity::getId, Function.identity()));
+        return productIds.stream().map(products::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    /**
+     * SELECT product WHERE id > after ORDER BY id LIMIT limit
+     *
+     * @param after id of the last object of the previous page
+     * @param limit page size
+     * @return list with the objects of the page
+     */
+    public List<ProductEntity> selectAllProducts(Integer after, int limit) {
+        return productRepo.findByIdGreaterThanOrderById(after, PageRequest.of(0, limit));
+    }
+
+    /**
+     * SELECT product ORDER BY id as forward-only stream.
+     * Every object gets detached after the consumer so the persistence context stays empty.
+     *
+     * @param consumer called once per object in id order
+     */
+    @Transactional
+    public void exportProducts(Consumer<ProductEntity> consumer) {
+        try (Stream<ProductEntity> products = productRepo.streamAll()) {
+            products.forEach(product -> {
+                consumer.accept(product);
+                entityManager.detach(product);
+            });
+        }
+    }
+
+    /**
+     * SELECT DISTINCT product-category (answered by the in-memory {@link ProductIndex})
+     *
+     * @return sorted categories with ETag
+     */
+    public CategoryRegistry.Snapshot selectDistinctCategories() {
+        return productIndex.getCategories();
+    }
+
+    /**
+     * SELECT product-category, COUNT(*) GROUP BY product-category to rebuild the in-memory categories
+     *
+     * @return sorted categories with ETag
+     */
+    public CategoryRegistry.Snapshot rebuildCategories() {
+        Map<String, Long> counts = new HashMap<>();
+        for (Object[] row : productRepo.countCategories()) {
+            counts.put((String) row[0], (Long) row[1]);
+        }
+        productIndex.resetCategories(counts);
+        return productIndex.getCategories();
+    }
+
+    /**
+     * @return version of the catalog, changes with every product and recipe write
+     */
+    public long selectCatalogVersion() {
+        return catalogVersion.get();
+    }
+
+    /**
+     * @return hit, miss and eviction counts of the product cache
+     */
+    public CacheStatistics selectCacheStatistics() {
+        return productCache.getStatistics();
     }
 
     // === INSERT ======================================================================================================
@@ -86,14 +287,129 @@ public class ProductDB implements ProductService {
      */
     @Transactional
     public ProductEntity insertProduct(Product productModel) {
-        return productRepo.save(new ProductEntity(productModel));
+        ProductEntity product = productRepo.save(new ProductEntity(productModel));
+        productCache.invalidate(product.getId());
+        Product indexed = product.mapToModel();
+        AfterCommit.run(() -> productIndex.put(indexed));
+        catalogVersion.increment();
+        return product;
+    }
+
+    /**
+     * INSERT product (bulk)
+     * <p>The products get inserted as JDBC batches, one transaction per batch. Invalid rows and duplicate names
+     * get reported as failures without aborting the import. The iterator may throw an
+     * {@link IllegalArgumentException} for a malformed row, it gets reported as failure of that row.</p>
+     *
+     * @param productModels with input data, consumed lazily
+     * @return counts, failures and throughput of the import
+     */
+    public BulkImport insertProducts(Iterator<Product> productModels) {
+        long start = System.currentTimeMillis();
+        List<BulkImport.Failure> failures = new ArrayList<>();
+        int inserted = 0;
+        int row = 0;
+        Map<Integer, Product> batch = new LinkedHashMap<>();
+        while (productModels.hasNext()) {
+            row++;
+            try {
+                Product productModel = productModels.next();
+                if (productModel.getName() == null || productModel.getName().isBlank()) {
+                    failures.add(new BulkImport.Failure(row, null, "Product name is missing"));
+                } else if (productModel.getUnit() == null) {
+                    failures.add(new BulkImport.Failure(row, productModel.getName(), "Product unit is missing"));
+                } else {
+                    batch.put(row, productModel);
+                }
+            } catch (IllegalArgumentException e) {
+                failures.add(new BulkImport.Failure(row, null, e.getMessage()));
+            }
+            if (batch.size() >= bulkBatchSize) {
+                inserted += insertBatch(batch, failures);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            inserted += insertBatch(batch, failures);
+        }
+
+        failures.sort(Comparator.comparing(BulkImport.Failure::getRow));
+        long durationMs = System.currentTimeMillis() - start;
+        double rowsPerSecond = row * 1000d / Math.max(durationMs, 1);
+        ApiLogger.info("Bulk import of " + row + " products: " + inserted + " inserted, " + failures.size()
+                + " failed in " + durationMs + " ms (" + Math.round(rowsPerSecond) + " rows/s)");
+        return new BulkImport(inserted, failures.size(), durationMs, rowsPerSecond, failures);
+    }
+
+    private int insertBatch(Map<Integer, Product> batch, List<BulkImport.Failure> failures) {
+        // names are unique (case-insensitive): reject names that exist already or repeat within the batch
+        Set<String> existing = productRepo.findExistingNames(batch.values().stream().map(Product::getName).collect(Collectors.toList()))
+                .stream().map(name -> name.toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+        List<Integer> rows = new ArrayList<>();
+        for (Map.Entry<Integer, Product> entry : batch.entrySet()) {
+            if (existing.add(entry.getValue().getName().toLowerCase(Locale.ROOT))) {
+                rows.add(entry.getKey());
+            } else {
+                failures.add(new BulkImport.Failure(entry.getKey(), entry.getValue().getName(), "Product name already exists"));
+            }
+        }
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        List<String> insertedNames = new ArrayList<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement statement, int i) throws SQLException {
+                    setInsertValues(statement, batch.get(rows.get(i)));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return rows.size();
+                }
+            }));
+            rows.forEach(row -> insertedNames.add(batch.get(row).getName()));
+        } catch (DataAccessException e) {
+            // the whole batch got rolled back (a name inserted concurrently, a value too long, ...):
+            // insert row by row to find the failing rows, the update counts of a rewritten batch can not tell
+            for (Integer row : rows) {
+                Product product = batch.get(row);
+                try {
+                    transactionTemplate.executeWithoutResult(status ->
+                            jdbcTemplate.update(INSERT_SQL, statement -> setInsertValues(statement, product)));
+                    insertedNames.add(product.getName());
+                } catch (DuplicateKeyException rowException) {
+                    failures.add(new BulkImport.Failure(row, product.getName(), "Product name already exists"));
+                } catch (DataAccessException rowException) {
+                    failures.add(new BulkImport.Failure(row, product.getName(), rowException.getMostSpecificCause().getMessage()));
+                }
+            }
+        }
+        if (insertedNames.isEmpty()) {
+            return 0;
+        }
+        productRepo.findByNameIn(insertedNames).forEach(product -> productIndex.put(product.mapToModel()));
+        catalogVersion.increment();
+        return insertedNames.size();
     }
 
+    private static void setInsertValues(PreparedStatement statement, Product product) throws SQLException {
+        statement.setString(1, product.getName());
+        statement.setString(2, product.getCategory());
+        statement.setInt(3, product.getUnit().ordinal());
+        statement.setObject(4, product.getPackageSize());
+        statement.setObject(5, product.getKcal());
+        statement.setObject(6, product.getCarbohydrates());
+        statement.setObject(7, product.getProtein());
+        statement.setObject(8, product.getFat());
+    }
 
     // === UPDATE ======================================================================================================
 
     /**
-     * UPDATE product
+     * UPDATE product (publishes a {@link ProductNutritionChangedEvent} if the nutrition changes)
      *
      * @param productModel with input data
      * @return updated object
@@ -101,8 +417,17 @@ public class ProductDB implements ProductService {
      */
     @Transactional
     public ProductEntity updateProduct(Product productModel) throws ElementNotFoundException {
-        ProductEntity product = this.selectProductById(productModel.getId());
-        return productRepo.save(product.update(productModel));
+        ProductEntity product = this.findProductById(productModel.getId());
+        boolean nutritionChanged = !product.hasNutrition(productModel);
+        product = productRepo.save(product.update(productModel));
+        if (nutritionChanged) {
+            eventPublisher.publishEvent(new ProductNutritionChangedEvent(product.getId()));
+        }
+        productCache.invalidate(product.getId());
+        Product indexed = product.mapToModel();
+        AfterCommit.run(() -> productIndex.put(indexed));
+        catalogVersion.increment();
+        return product;
     }
 
     // === DELETE ======================================================================================================
@@ -115,8 +440,11 @@ public class ProductDB implements ProductService {
      * @throws ElementNotFoundException if id does not exist
      */
     public ProductEntity deleteProductById(Integer productId) throws ElementNotFoundException {
-        ProductEntity product = this.selectProductById(productId);
+        ProductEntity product = this.findProductById(productId);
         productRepo.delete(product);
+        productCache.invalidate(productId);
+        AfterCommit.run(() -> productIndex.remove(productId));
+        catalogVersion.increment();
         return product;
     }
 }
@@ -134,6 +134,17 @@ public class ProductEntity implements Serializable {
         return fat != null ? fat : 0;
     }
 
+    /**
+     * @param model with input data
+     * @return true if {@link #update} would keep all nutrition values
+     */
+    public boolean hasNutrition(Product model) {
+        return Objects.equals(kcal, model.getKcal())
+                && Objects.equals(carbohydrates, model.getCarbohydrates())
+                && Objects.equals(protein, model.getProtein())
+                && Objects.equals(fat, model.getFat());
+    }
+
     // === OBJECT DEFAULTS =============================================================================================
 
     @Override
@@ -0,0 +1,201 @@
+package com.freshplanner.api.service.product;
+
+import com.freshplanner.api.controller.model.NutritionStatistics;
+import com.freshplanner.api.controller.model.Product;
+import com.freshplanner.api.controller.model.ProductFilter;
+import com.freshplanner.api.controller.model.Suggestion;
+import com.freshplanner.api.enums.Nutrient;
+import com.freshplanner.api.service.catalog.CatalogSnapshot;
+import com.freshplanner.api.utility.ApiLogger;
+import com.freshplanner.api.utility.CategoryRegistry;
+import com.freshplanner.api.utility.FuzzyIndex;
+import com.freshplanner.api.utility.PrefixIndex;
+import com.freshplanner.api.utility.TrigramIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * <h2>Product Index</h2>
+ * In-memory search structures over the product catalog.
+ * Gets built from the {@link CatalogSnapshot} (or the database if it is outdated) on startup
+ * and kept up to date by the writes in {@link ProductDB}.
+ */
+@Component
+class ProductIndex {
+
+    private final ProductRepo productRepo;
+    private final CatalogSnapshot catalogSnapshot;
+
+    private final TrigramIndex names = new TrigramIndex();
+    private final TrigramIndex categories = new TrigramIndex();
+    private final FuzzyIndex fuzzyNames = new FuzzyIndex();
+    private final PrefixIndex prefixes = new PrefixIndex();
+    private final NutritionStore nutrition = new NutritionStore();
+    private final CategoryRegistry categoryRegistry = new CategoryRegistry();
+    private final Map<Integer, String> categoryOf = new HashMap<>();
+
+    @Autowired
+    ProductIndex(ProductRepo productRepo, CatalogSnapshot catalogSnapshot) {
+        this.productRepo = productRepo;
+        this.catalogSnapshot = catalogSnapshot;
+    }
+
+    // === BUILD =======================================================================================================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        long start = System.currentTimeMillis();
+        Optional<List<Product>> snapshot = catalogSnapshot.loadProducts();
+        List<Product> products = snapshot.orElseGet(() -> productRepo.findAll()
+                .stream().map(ProductEntity::mapToModel).collect(Collectors.toList()));
+        rebuild(products);
+        ApiLogger.info("Indexed " + products.size() + " products from the " + (snapshot.isPresent() ? "snapshot" : "database")
+                + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    synchronized void rebuild(Collection<Product> products) {
+        names.clear();
+        categories.clear();
+        fuzzyNames.clear();
+        prefixes.clear();
+        nutrition.clear();
+        categoryOf.clear();
+        categoryRegistry.reset(Collections.emptyMap());
+        products.forEach(this::put);
+    }
+
+    // === UPDATE ======================================================================================================
+
+    /**
+     * @param product inserted or updated object
+     */
+    synchronized void put(Product product) {
+        names.put(product.getId(), product.getName());
+        categories.put(product.getId(), product.getCategory());
+        fuzzyNames.put(product.getId(), product.getName());
+        prefixes.put(product.getId(), product.getName());
+        nutrition.put(product);
+        categoryRegistry.remove(categoryOf.put(product.getId(), product.getCategory()));
+        categoryRegistry.add(product.getCategory());
+    }
+
+    /**
+     * @param productId database id of the deleted object
+     */
+    synchronized void remove(Integer productId) {
+        names.remove(productId);
+        categories.remove(productId);
+        fuzzyNames.remove(productId);
+        prefixes.remove(productId);
+        nutrition.remove(productId);
+        categoryRegistry.remove(categoryOf.remove(productId));
+    }
+
+    /**
+     * Replaces the categories with the state of the database.
+     *
+     * @param categoryCounts number of products per category
+     */
+    synchronized void resetCategories(Map<String, Long> categoryCounts) {
+        categoryRegistry.reset(categoryCounts);
+    }
+
+    // === SEARCH ======================================================================================================
+
+    /**
+     * @return categories in use with ETag
+     */
+    CategoryRegistry.Snapshot getCategories() {
+        return categoryRegistry.getSnapshot();
+    }
+
+    /**
+     * @param name  partial name
+     * @param limit maximum number of results
+     * @return ids of the matching products, best match first
+     */
+    List<Integer> searchByName(String name, int limit) {
+        return names.search(name, limit);
+    }
+
+    /**
+     * @param name        name with typos
+     * @param maxDistance allowed edits per word
+     * @param limit       maximum number of results
+     * @return ids of the matching products, closest match first
+     * @throws IllegalArgumentException if the distance is out of range
+     */
+    List<Integer> searchByNameFuzzy(String name, int maxDistance, int limit) throws IllegalArgumentException {
+        return fuzzyNames.search(name, maxDistance, limit);
+    }
+
+    /**
+     * @param category partial category
+     * @param limit    maximum number of results
+     * @return ids of the matching products, best match first
+     */
+    List<Integer> searchByCategory(String category, int limit) {
+        return categories.search(category, limit);
+    }
+
+    /**
+     * @param prefix start of the name
+     * @param limit  maximum number of results
+     * @return matching products in alphabetical order
+     */
+    List<Suggestion> suggestByName(String prefix, int limit) {
+        return prefixes.suggest(prefix, limit);
+    }
+
+    /**
+     * @param nutrient  value to sort by
+     * @param ascending smallest values first instead of largest
+     * @param min       smallest accepted value
+     * @param max       largest accepted value
+     * @param limit     maximum number of results
+     * @return ids of the matching products in value order
+     */
+    List<Integer> topByNutrient(Nutrient nutrient, boolean ascending, float min, float max, int limit) {
+        return Arrays.stream(nutrition.top(nutrient, ascending, min, max, limit)).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * @param filter nutrient ranges and category
+     * @param after  id of the last product of the previous page
+     * @param limit  page size
+     * @return ids of the matching products in ascending order
+     */
+    List<Integer> filter(ProductFilter filter, int after, int limit) {
+        float[] min = new float[Nutrient.values().length];
+        float[] max = new float[Nutrient.values().length];
+        Arrays.fill(min, Float.NEGATIVE_INFINITY);
+        Arrays.fill(max, Float.POSITIVE_INFINITY);
+        setRange(min, max, Nutrient.KCAL, filter.getKcalMin(), filter.getKcalMax());
+        setRange(min, max, Nutrient.CARBOHYDRATES, filter.getCarbohydratesMin(), filter.getCarbohydratesMax());
+        setRange(min, max, Nutrient.PROTEIN, filter.getProteinMin(), filter.getProteinMax());
+        setRange(min, max, Nutrient.FAT, filter.getFatMin(), filter.getFatMax());
+        return Arrays.stream(nutrition.filter(min, max, filter.getCategory(), after, limit)).boxed().collect(Collectors.toList());
+    }
+
+    private static void setRange(float[] min, float[] max, Nutrient nutrient, Float from, Float to) {
+        if (from != null) {
+            min[nutrient.ordinal()] = from;
+        }
+        if (to != null) {
+            max[nutrient.ordinal()] = to;
+        }
+    }
+
+    /**
+     * @param nutrient value to aggregate
+     * @return statistics over all products
+     */
+    NutritionStatistics nutritionStatistics(Nutrient nutrient) {
+        return nutrition.statistics(nutrient);
+    }
+}
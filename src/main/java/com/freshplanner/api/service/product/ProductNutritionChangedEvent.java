@@ -0,0 +1,16 @@
+package com.freshplanner.api.service.product;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * <h2>Product Nutrition Changed Event</h2>
+ * Published by {@link ProductDB} inside the update transaction when the nutrition values of a product change,
+ * so that dependent totals (e.g. of recipes) can be recomputed after the commit.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductNutritionChangedEvent {
+
+    private final Integer productId;
+}
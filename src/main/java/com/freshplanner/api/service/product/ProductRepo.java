@@ -1,20 +1,33 @@
 package com.freshplanner.api.service.product;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
 interface ProductRepo extends JpaRepository<ProductEntity, Integer> {
 
-    @Query("select p from Product p where p.name like %:name%")
-    List<ProductEntity> searchByName(String name);
+    List<ProductEntity> findByIdGreaterThanOrderById(Integer after, Pageable pageable);
+
+    // fetch size Integer.MIN_VALUE makes the MySQL driver stream the rows instead of buffering the result set
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "-2147483648"))
+    @Query("select p from Product p order by p.id")
+    Stream<ProductEntity> streamAll();
+
+    @Query("select p.name from Product p where p.name in :names")
+    List<String> findExistingNames(Collection<String> names);
 
-    @Query("select p from Product p where p.category like %:category%")
-    List<ProductEntity> searchByCategory(String category);
+    List<ProductEntity> findByNameIn(Collection<String> names);
 
-    @Query(value = "select distinct p.category from Product p where p.category is not NULL")
-    List<String> findAllCategories();
+    @Query("select p.category, count(p) from Product p where p.category is not NULL group by p.category")
+    List<Object[]> countCategories();
 }
@@ -2,6 +2,9 @@ package com.freshplanner.api.service.product;
 
 import com.freshplanner.api.exception.ElementNotFoundException;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface ProductService {
     /**
      * SELECT product WHERE productId
@@ -11,4 +14,13 @@ public interface ProductService {
      * @throws ElementNotFoundException if id does not exist
      */
     ProductEntity selectProductById(Integer productId) throws ElementNotFoundException;
+
+    /**
+     * SELECT product WHERE productId IN productIds
+     *
+     * @param productIds database ids
+     * @return result objects in the order of the ids
+     * @throws ElementNotFoundException with all ids that do not exist
+     */
+    List<ProductEntity> selectProductsByIds(Collection<Integer> productIds) throws ElementNotFoundException;
 }
@@ -0,0 +1,131 @@
+package com.freshplanner.api.service.recipe;
+
+import com.freshplanner.api.controller.model.Recipe;
+import com.freshplanner.api.controller.model.RecipeMatch;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * <h2>Ingredient Matrix</h2>
+ * One sparse bitset of product ids per recipe (only the non-empty 64-bit words) with the item counts,
+ * to rank recipes by how much of them a set of available products covers.
+ * <ul>
+ *     <li>Available ingredients are the popcount of the recipe words AND the available words.</li>
+ *     <li>Only for the available ingredients the counts get compared.</li>
+ *     <li>The recipes are scored in parallel.</li>
+ * </ul>
+ */
+class IngredientMatrix {
+
+    private final Map<Integer, Row> rows = new ConcurrentHashMap<>();
+
+    /**
+     * @param recipe inserted or updated object with its items
+     */
+    void put(Recipe recipe) {
+        rows.put(recipe.getId(), new Row(recipe));
+    }
+
+    /**
+     * @param recipeId database id of the deleted object
+     */
+    void remove(Integer recipeId) {
+        rows.remove(recipeId);
+    }
+
+    void clear() {
+        rows.clear();
+    }
+
+    /**
+     * @param available available count per product id
+     * @param limit     maximum number of results
+     * @return recipes with at least one available ingredient, most covered first
+     */
+    List<RecipeMatch> rank(Map<Integer, Float> available, int limit) {
+        int maxProductId = available.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1);
+        if (maxProductId < 0) {
+            return Collections.emptyList();
+        }
+        long[] words = new long[(maxProductId >> 6) + 1];
+        float[] counts = new float[maxProductId + 1];
+        available.forEach((productId, count) -> {
+            if (productId >= 0 && count != null && count > 0) {
+                words[productId >> 6] |= 1L << productId;
+                counts[productId] = count;
+            }
+        });
+
+        Row[] snapshot = rows.values().toArray(new Row[0]);
+        int[] availableItems = new int[snapshot.length];
+        int[] sufficientItems = new int[snapshot.length];
+        IntStream.range(0, snapshot.length).parallel().forEach(i ->
+                snapshot[i].score(words, counts, availableItems, sufficientItems, i));
+
+        return IntStream.range(0, snapshot.length).boxed()
+                .filter(i -> availableItems[i] > 0)
+                .sorted(Comparator
+                        .comparingInt((Integer i) -> -sufficientItems[i])
+                        .thenComparingInt(i -> -availableItems[i])
+                        .thenComparingInt(i -> snapshot[i].productIds.length)
+                        .thenComparingInt(i -> snapshot[i].recipeId))
+                .limit(limit)
+                .map(i -> snapshot[i].toMatch(availableItems[i], sufficientItems[i]))
+                .collect(Collectors.toList());
+    }
+
+    // === INTERNAL ====================================================================================================
+
+    private static class Row {
+        private final int recipeId;
+        private final String recipeName;
+        private final int[] productIds; // sorted
+        private final float[] counts;
+        private final int[] wordIndexes;
+        private final long[] words;
+
+        private Row(Recipe recipe) {
+            this.recipeId = recipe.getId();
+            this.recipeName = recipe.getName();
+            List<Recipe.Item> items = new ArrayList<>(recipe.getItems());
+            items.sort(Comparator.comparing(Recipe.Item::getProductId));
+            this.productIds = new int[items.size()];
+            this.counts = new float[items.size()];
+            for (int i = 0; i < items.size(); i++) {
+                productIds[i] = items.get(i).getProductId();
+                counts[i] = items.get(i).getCount() != null ? items.get(i).getCount() : 0f;
+            }
+            this.wordIndexes = Arrays.stream(productIds).map(id -> id >> 6).distinct().toArray();
+            this.words = new long[wordIndexes.length];
+            for (int productId : productIds) {
+                words[Arrays.binarySearch(wordIndexes, productId >> 6)] |= 1L << productId;
+            }
+        }
+
+        private void score(long[] availableWords, float[] availableCounts, int[] availableItems, int[] sufficientItems, int slot) {
+            int available = 0;
+            int sufficient = 0;
+            for (int w = 0; w < wordIndexes.length && wordIndexes[w] < availableWords.length; w++) {
+                long common = words[w] & availableWords[wordIndexes[w]];
+                available += Long.bitCount(common);
+                while (common != 0) {
+                    int productId = (wordIndexes[w] << 6) + Long.numberOfTrailingZeros(common);
+                    if (availableCounts[productId] >= counts[Arrays.binarySearch(productIds, productId)]) {
+                        sufficient++;
+                    }
+                    common &= common - 1;
+                }
+            }
+            availableItems[slot] = available;
+            sufficientItems[slot] = sufficient;
+        }
+
+        private RecipeMatch toMatch(int available, int sufficient) {
+            return new RecipeMatch(recipeId, recipeName, productIds.length, available, sufficient,
+                    (float) sufficient / productIds.length);
+        }
+    }
+}
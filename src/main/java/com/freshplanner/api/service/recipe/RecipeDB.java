@@ -1,27 +1,62 @@
 package com.freshplanner.api.service.recipe;
 
 import com.freshplanner.api.controller.model.Recipe;
+import com.freshplanner.api.controller.model.RecipeMatch;
+import com.freshplanner.api.controller.model.RecipeSummary;
+import com.freshplanner.api.controller.model.SimilarRecipe;
+import com.freshplanner.api.controller.model.Suggestion;
+import com.freshplanner.api.enums.Match;
 import com.freshplanner.api.exception.ElementNotFoundException;
+import com.freshplanner.api.service.catalog.CatalogVersion;
+import com.freshplanner.api.service.product.ProductEntity;
+import com.freshplanner.api.service.product.ProductNutritionChangedEvent;
 import com.freshplanner.api.service.product.ProductService;
+import com.freshplanner.api.utility.AfterCommit;
+import com.freshplanner.api.utility.ApiLogger;
+import com.freshplanner.api.utility.CategoryRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
-import java.util.List;
-import java.util.Optional;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
-public class RecipeDB {
+public class RecipeDB implements RecipeService {
+
+    private static final String INSERT_ITEM_SQL = "insert into recipe_items (recipe_id, product_id, count, description) values (?, ?, ?, ?)";
 
     private final RecipeRepo recipeRepo;
     private final RecipeItemRepo recipeItemRepo;
     private final ProductService productService;
+    private final RecipeIndex recipeIndex;
+    private final CatalogVersion catalogVersion;
+    private final JdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Autowired
-    public RecipeDB(RecipeRepo recipeRepo, RecipeItemRepo recipeItemRepo, ProductService recipeService) {
+    public RecipeDB(RecipeRepo recipeRepo, RecipeItemRepo recipeItemRepo, ProductService recipeService, RecipeIndex recipeIndex,
+                    CatalogVersion catalogVersion, JdbcTemplate jdbcTemplate) {
         this.recipeRepo = recipeRepo;
         this.recipeItemRepo = recipeItemRepo;
         this.productService = recipeService;
+        this.recipeIndex = recipeIndex;
+        this.catalogVersion = catalogVersion;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     // === SELECT ======================================================================================================
@@ -42,6 +77,57 @@ public class RecipeDB {
         }
     }
 
+    /**
+     * SELECT recipeItem.product, recipeItem.count WHERE recipeId (one query, existence only checked for empty recipes)
+     *
+     * @param recipeId database id
+     * @return count per product id of the recipe items
+     * @throws ElementNotFoundException if id does not exist
+     */
+    @Override
+    public Map<Integer, Float> selectRecipeIngredients(Integer recipeId) throws ElementNotFoundException {
+        Map<Integer, Float> ingredients = new LinkedHashMap<>();
+        for (Object[] row : recipeItemRepo.findCountsByRecipeId(recipeId)) {
+            ingredients.put((Integer) row[0], (Float) row[1]);
+        }
+        if (ingredients.isEmpty() && !recipeRepo.existsById(recipeId)) {
+            throw new ElementNotFoundException(RecipeEntity.class, recipeId.toString());
+        }
+        return ingredients;
+    }
+
+    /**
+     * SELECT recipeItem.recipe, recipeItem.product, recipeItem.count WHERE recipeId IN recipeIds
+     * (one query, existence only checked for recipes without items)
+     *
+     * @param recipeIds database ids
+     * @return count per product id of the recipe items, per recipe id
+     * @throws ElementNotFoundException with all ids that do not exist
+     */
+    @Override
+    public Map<Integer, Map<Integer, Float>> selectRecipeIngredients(Collection<Integer> recipeIds) throws ElementNotFoundException {
+        Map<Integer, Map<Integer, Float>> ingredients = new HashMap<>();
+        if (recipeIds.isEmpty()) {
+            return ingredients;
+        }
+        Set<Integer> ids = new HashSet<>(recipeIds);
+        for (Object[] row : recipeItemRepo.findCountsByRecipeIds(ids)) {
+            ingredients.computeIfAbsent((Integer) row[0], id -> new HashMap<>()).put((Integer) row[1], (Float) row[2]);
+        }
+        Set<Integer> withoutItems = new TreeSet<>(ids);
+        withoutItems.removeAll(ingredients.keySet());
+        if (!withoutItems.isEmpty()) {
+            for (Integer recipeId : recipeRepo.findExistingIds(withoutItems)) {
+                withoutItems.remove(recipeId);
+                ingredients.put(recipeId, new HashMap<>());
+            }
+            if (!withoutItems.isEmpty()) {
+                throw new ElementNotFoundException(RecipeEntity.class, withoutItems.stream().map(String::valueOf).collect(Collectors.joining(", ")));
+            }
+        }
+        return ingredients;
+    }
+
     private RecipeItemEntity selectRecipeItemById(Integer recipeId, Integer productId) throws ElementNotFoundException {
         RecipeItemEntity.Key id = new RecipeItemEntity.Key(recipeId, productId);
         Optional<RecipeItemEntity> item = recipeItemRepo.findById(id);
@@ -73,38 +159,208 @@ public class RecipeDB {
     }
 
     /**
-     * SELECT recipe
+     * SELECT recipe-name WHERE LIKE prefix% (answered by the in-memory {@link RecipeIndex})
+     *
+     * @param prefix start of the name
+     * @param limit  maximum number of results
+     * @return matching names in alphabetical order
+     */
+    public List<Suggestion> selectRecipeSuggestions(String prefix, int limit) {
+        return recipeIndex.suggestByName(prefix, limit);
+    }
+
+    /**
+     * SELECT recipe WHERE id > after ORDER BY id LIMIT limit
+     *
+     * @param after id of the last object of the previous page
+     * @param limit page size
+     * @return list with the objects of the page
+     */
+    public List<RecipeEntity> selectAllRecipes(Integer after, int limit) {
+        return recipeRepo.findByIdGreaterThanOrderById(after, PageRequest.of(0, limit));
+    }
+
+    /**
+     * SELECT recipe WHERE ALL / ANY productIds IN items AND id > after ORDER BY id LIMIT limit
+     * (answered by the in-memory {@link RecipeIndex})
+     *
+     * @param productIds ingredients
+     * @param match      recipes with all or with any of the ingredients
+     * @param after      id of the last object of the previous page
+     * @param limit      page size
+     * @return list with the objects of the page
+     */
+    public List<RecipeEntity> selectRecipesByProducts(Collection<Integer> productIds, Match match, Integer after, int limit) {
+        List<Integer> recipeIds = recipeIndex.findByProducts(productIds, match, after, limit);
+        return recipeRepo.findAllById(recipeIds).stream()
+                .sorted(Comparator.comparing(RecipeEntity::getId))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * SELECT recipe-summary WHERE id > after ORDER BY id LIMIT limit (without items)
      *
-     * @return list with all objects
+     * @param after id of the last object of the previous page
+     * @param limit page size
+     * @return list with the objects of the page
      */
-    public List<RecipeEntity> selectAllRecipes() {
-        return recipeRepo.findAll();
+    public List<RecipeSummary> selectAllRecipeSummaries(Integer after, int limit) {
+        return recipeRepo.findSummariesAfter(after, PageRequest.of(0, limit));
     }
 
     /**
-     * SELECT DISTINCT recipe-category
+     * SELECT recipe-summary WHERE LIKE recipeName AND id > after ORDER BY id LIMIT limit (without items)
      *
-     * @return list with all objects
+     * @param recipeName partial name
+     * @param after      id of the last object of the previous page
+     * @param limit      page size
+     * @return list with the objects of the page
      */
-    public List<String> selectDistinctCategories() {
-        return recipeRepo.findAllCategories();
+    public List<RecipeSummary> selectRecipeSummariesByName(String recipeName, Integer after, int limit) {
+        return recipeRepo.searchSummariesByName(recipeName, after, PageRequest.of(0, limit));
+    }
+
+    /**
+     * SELECT recipe-summary WHERE LIKE recipeCategory AND id > after ORDER BY id LIMIT limit (without items)
+     *
+     * @param recipeCategory partial name
+     * @param after          id of the last object of the previous page
+     * @param limit          page size
+     * @return list with the objects of the page
+     */
+    public List<RecipeSummary> selectRecipeSummariesByCategory(String recipeCategory, Integer after, int limit) {
+        return recipeRepo.searchSummariesByCategory(recipeCategory, after, PageRequest.of(0, limit));
+    }
+
+    /**
+     * SELECT recipe-summary WHERE ALL / ANY productIds IN items AND id > after ORDER BY id LIMIT limit
+     * (ids answered by the in-memory {@link RecipeIndex}, without items)
+     *
+     * @param productIds ingredients
+     * @param match      recipes with all or with any of the ingredients
+     * @param after      id of the last object of the previous page
+     * @param limit      page size
+     * @return list with the objects of the page
+     */
+    public List<RecipeSummary> selectRecipeSummariesByProducts(Collection<Integer> productIds, Match match, Integer after, int limit) {
+        List<Integer> recipeIds = recipeIndex.findByProducts(productIds, match, after, limit);
+        return recipeIds.isEmpty() ? Collections.emptyList() : recipeRepo.findSummariesByIds(recipeIds);
+    }
+
+    /**
+     * SELECT recipe ORDER BY covered ingredients (answered by the in-memory {@link RecipeIndex})
+     *
+     * @param available available count per product id (e.g. the items of a storage)
+     * @param limit     maximum number of results
+     * @return recipes with at least one available ingredient, most covered first
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public List<RecipeMatch> selectCookableRecipes(Map<Integer, Float> available, int limit) throws IllegalArgumentException {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive but was " + limit);
+        }
+        return recipeIndex.rankByIngredients(available, limit);
+    }
+
+    /**
+     * SELECT recipe ORDER BY ingredient similarity LIMIT limit (candidates from the MinHash buckets of the
+     * in-memory {@link RecipeIndex}, names from one summary query)
+     *
+     * @param recipeId database id
+     * @param limit    maximum number of results
+     * @return other recipes that share ingredients, most similar first
+     * @throws ElementNotFoundException if id does not exist
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public List<SimilarRecipe> selectSimilarRecipes(Integer recipeId, int limit) throws ElementNotFoundException, IllegalArgumentException {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive but was " + limit);
+        }
+        if (!recipeIndex.contains(recipeId) && !recipeRepo.existsById(recipeId)) {
+            throw new ElementNotFoundException(RecipeEntity.class, recipeId.toString());
+        }
+        Map<Integer, Float> similarities = recipeIndex.findSimilar(recipeId, limit);
+        if (similarities.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Integer, RecipeSummary> summaries = recipeRepo.findSummariesByIds(similarities.keySet()).stream()
+                .collect(Collectors.toMap(RecipeSummary::getId, Function.identity()));
+        return similarities.entrySet().stream()
+                .filter(entry -> summaries.containsKey(entry.getKey()))
+                .map(entry -> {
+                    RecipeSummary summary = summaries.get(entry.getKey());
+                    return new SimilarRecipe(summary.getId(), summary.getName(), summary.getCategory(), entry.getValue());
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * SELECT DISTINCT recipe-category (answered by the in-memory {@link RecipeIndex})
+     *
+     * @return sorted categories with ETag
+     */
+    public CategoryRegistry.Snapshot selectDistinctCategories() {
+        return recipeIndex.getCategories();
+    }
+
+    /**
+     * @return version of the catalog, changes with every product and recipe write
+     */
+    public long selectCatalogVersion() {
+        return catalogVersion.get();
+    }
+
+    /**
+     * SELECT recipe-category, COUNT(*) GROUP BY recipe-category to rebuild the in-memory categories
+     *
+     * @return sorted categories with ETag
+     */
+    public CategoryRegistry.Snapshot rebuildCategories() {
+        Map<String, Long> counts = new HashMap<>();
+        for (Object[] row : recipeRepo.countCategories()) {
+            counts.put((String) row[0], (Long) row[1]);
+        }
+        recipeIndex.resetCategories(counts);
+        return recipeIndex.getCategories();
     }
 
     // === INSERT ======================================================================================================
 
     /**
-     * INSERT recipe
+     * INSERT recipe with its items: one IN query for the products, one insert for the recipe (with the nutrition
+     * totals), one JDBC batch for the items and one select to load the result
      *
      * @param recipeModel with input data
      * @return created object
-     * @throws ElementNotFoundException if id does not exist
+     * @throws ElementNotFoundException with all product ids that do not exist
+     * @throws IllegalArgumentException if a product occurs in more than one item
      */
     @Transactional
-    public RecipeEntity insertRecipe(Recipe recipeModel) throws ElementNotFoundException {
-        RecipeEntity recipe = recipeRepo.save(new RecipeEntity(recipeModel));
-        for (Recipe.Item item : recipeModel.getItems()) {
-            recipe.getRecipeItems().add(insertRecipeItem(recipe, item));
+    public RecipeEntity insertRecipe(Recipe recipeModel) throws ElementNotFoundException, IllegalArgumentException {
+        List<Recipe.Item> itemModels = recipeModel.getItems() != null ? recipeModel.getItems() : Collections.emptyList();
+        Set<Integer> productIds = new LinkedHashSet<>();
+        for (Recipe.Item item : itemModels) {
+            if (!productIds.add(item.getProductId())) {
+                throw new IllegalArgumentException("Product " + item.getProductId() + " occurs more than once in the recipe");
+            }
         }
+        Map<Integer, ProductEntity> products = productService.selectProductsByIds(productIds).stream()
+                .collect(Collectors.toMap(ProductEntity::getId, Function.identity()));
+
+        RecipeEntity recipe = new RecipeEntity(recipeModel);
+        List<RecipeItemEntity> items = new ArrayList<>();
+        for (Recipe.Item item : itemModels) {
+            RecipeItemEntity recipeItem = new RecipeItemEntity(recipe, products.get(item.getProductId()), item.getCount(), item.getDescription());
+            items.add(recipeItem);
+            recipe.addNutrition(recipeItem);
+        }
+        recipe = recipeRepo.save(recipe);
+        insertRecipeItems(recipe.getId(), items);
+        entityManager.refresh(recipe);
+
+        Recipe indexed = recipe.mapToModel();
+        AfterCommit.run(() -> recipeIndex.put(indexed));
+        catalogVersion.increment();
         return recipe;
     }
 
@@ -118,11 +374,35 @@ public class RecipeDB {
      */
     @Transactional
     public RecipeEntity insertRecipeItem(int recipeId, Recipe.Item recipeItemModel) throws ElementNotFoundException {
+        lockRecipe(recipeId);
         RecipeEntity recipe = selectRecipeById(recipeId);
-        recipe.getRecipeItems().add(insertRecipeItem(recipe, recipeItemModel));
+        RecipeItemEntity recipeItem = insertRecipeItem(recipe, recipeItemModel);
+        recipe.getRecipeItems().add(recipeItem);
+        recipe = recomputeNutrition(recipe);
+        Recipe indexed = recipe.mapToModel();
+        AfterCommit.run(() -> recipeIndex.put(indexed));
+        catalogVersion.increment();
         return recipe;
     }
 
+    private void insertRecipeItems(int recipeId, List<RecipeItemEntity> items) {
+        jdbcTemplate.batchUpdate(INSERT_ITEM_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int i) throws SQLException {
+                RecipeItemEntity item = items.get(i);
+                statement.setInt(1, recipeId);
+                statement.setInt(2, item.getProductId());
+                statement.setFloat(3, item.getCount());
+                statement.setString(4, item.getDescription());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return items.size();
+            }
+        });
+    }
+
     private RecipeItemEntity insertRecipeItem(RecipeEntity recipe, Recipe.Item recipeItemModel) throws ElementNotFoundException {
         return recipeItemRepo.save(new RecipeItemEntity(
                 recipe,
@@ -142,8 +422,11 @@ public class RecipeDB {
      */
     @Transactional
     public RecipeEntity updateRecipe(Recipe recipeModel) throws ElementNotFoundException {
-        RecipeEntity recipe = this.selectRecipeById(recipeModel.getId());
-        return recipeRepo.save(recipe.update(recipeModel));
+        RecipeEntity recipe = recipeRepo.save(this.selectRecipeById(recipeModel.getId()).update(recipeModel));
+        Recipe indexed = recipe.mapToModel();
+        AfterCommit.run(() -> recipeIndex.put(indexed));
+        catalogVersion.increment();
+        return recipe;
     }
 
     /**
@@ -156,8 +439,13 @@ public class RecipeDB {
      */
     @Transactional
     public RecipeItemEntity updateRecipeItem(int recipeId, Recipe.Item itemModel) throws ElementNotFoundException {
+        lockRecipe(recipeId);
         RecipeItemEntity recipeItem = this.selectRecipeItemById(recipeId, itemModel.getProductId());
-        return recipeItemRepo.save(recipeItem.update(itemModel));
+        recipeItem = recipeItemRepo.save(recipeItem.update(itemModel));
+        Recipe indexed = recomputeNutrition(this.selectRecipeById(recipeId)).mapToModel();
+        AfterCommit.run(() -> recipeIndex.put(indexed));
+        catalogVersion.increment();
+        return recipeItem;
     }
 
     // === DELETE ======================================================================================================
@@ -170,11 +458,17 @@ public class RecipeDB {
      * @return updated object
      * @throws ElementNotFoundException if id does not exist
      */
+    @Transactional
     public RecipeEntity deleteRecipeItemById(Integer recipeId, Integer productId) throws ElementNotFoundException {
+        lockRecipe(recipeId);
         RecipeItemEntity item = this.selectRecipeItemById(recipeId, productId);
         recipeItemRepo.delete(item);
         RecipeEntity recipe = selectRecipeById(recipeId);
         recipe.getRecipeItems().remove(item);
+        recipe = recomputeNutrition(recipe);
+        Recipe indexed = recipe.mapToModel();
+        AfterCommit.run(() -> recipeIndex.put(indexed));
+        catalogVersion.increment();
         return recipe;
     }
 
@@ -188,6 +482,67 @@ public class RecipeDB {
     public RecipeEntity deleteRecipeById(Integer recipeId) throws ElementNotFoundException {
         RecipeEntity recipe = this.selectRecipeById(recipeId);
         recipeRepo.delete(recipe);
+        AfterCommit.run(() -> recipeIndex.remove(recipeId));
+        catalogVersion.increment();
+        return recipe;
+    }
+
+    // === NUTRITION ===================================================================================================
+
+    /**
+     * UPDATE recipe SET nutrition = SUM(item nutrition) WHERE nutrition IS NULL (recipes from before the columns existed)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void materializeNutrition() {
+        int recipes = recipeRepo.recomputeMissingNutrition();
+        if (recipes > 0) {
+            ApiLogger.info("Computed the nutrition of " + recipes + " recipes");
+        }
+    }
+
+    /**
+     * UPDATE recipe SET nutrition = SUM(item nutrition) WHERE recipe contains the product
+     * <p>Runs in its own transaction after the product update committed and locks the recipes (in id order) before
+     * the product gets read, the same order as the item changes take (recipe, then product), so they can not
+     * deadlock.</p>
+     *
+     * @param event with the changed product
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void onProductNutritionChanged(ProductNutritionChangedEvent event) {
+        List<Integer> recipeIds = recipeRepo.findRecipeIdsByProduct(event.getProductId());
+        if (recipeIds.isEmpty()) {
+            return;
+        }
+        recipeRepo.lockByIds(recipeIds);
+        recipeRepo.recomputeNutritionByRecipes(recipeIds);
+        catalogVersion.increment();
+    }
+
+    /**
+     * Locks the recipe row before its items change, so concurrent item changes of one recipe run one after another.
+     *
+     * @param recipeId database id
+     * @throws ElementNotFoundException if id does not exist
+     */
+    private void lockRecipe(Integer recipeId) throws ElementNotFoundException {
+        if (recipeRepo.lockByIds(Collections.singletonList(recipeId)).isEmpty()) {
+            throw new ElementNotFoundException(RecipeEntity.class, recipeId.toString());
+        }
+    }
+
+    /**
+     * UPDATE recipe SET nutrition = SUM(item nutrition) WHERE recipeId (after an item change, in SQL instead of
+     * read-modify-write on the entity)
+     *
+     * @param recipe with changed items
+     * @return refreshed object
+     */
+    private RecipeEntity recomputeNutrition(RecipeEntity recipe) {
+        entityManager.flush();
+        recipeRepo.recomputeNutritionByRecipes(Collections.singletonList(recipe.getId()));
+        entityManager.refresh(recipe);
         return recipe;
     }
 }
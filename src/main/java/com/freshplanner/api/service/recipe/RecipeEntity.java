@@ -34,6 +34,20 @@ public class RecipeEntity implements Serializable {
     @Column(name = "duration")
     private Integer duration;
 
+    // materialized sums over the items, kept up to date by RecipeDB (null until computed)
+
+    @Column(name = "kcal")
+    private Float kcal;
+
+    @Column(name = "carbohydrates")
+    private Float carbohydrates;
+
+    @Column(name = "protein")
+    private Float protein;
+
+    @Column(name = "fat")
+    private Float fat;
+
     // === OBJECT CONSTRUCTION =========================================================================================
 
     public RecipeEntity(Recipe recipe) {
@@ -42,6 +56,10 @@ public class RecipeEntity implements Serializable {
         this.category = recipe.getCategory();
         this.duration = recipe.getDuration();
         this.description = recipe.getDescription();
+        this.kcal = 0f;
+        this.carbohydrates = 0f;
+        this.protein = 0f;
+        this.fat = 0f;
     }
 
     public Recipe mapToModel() {
@@ -51,22 +69,14 @@ public class RecipeEntity implements Serializable {
         recipe.setCategory(category);
         recipe.setDuration(duration);
         recipe.setDescription(description);
-        float kcal = 0f;
-        float carbohydrates = 0f;
-        float protein = 0f;
-        float fat = 0f;
-        List<Recipe.Item> items = new ArrayList<>();
-        for (RecipeItemEntity item : recipeItems) {
-            kcal += item.getKcal();
-            carbohydrates += item.getCarbohydrates();
-            protein += item.getProtein();
-            fat += item.getFat();
-            items.add(item.mapToModel());
-        }
         recipe.setKcal(kcal);
         recipe.setCarbohydrates(carbohydrates);
         recipe.setProtein(protein);
         recipe.setFat(fat);
+        List<Recipe.Item> items = new ArrayList<>();
+        for (RecipeItemEntity item : recipeItems) {
+            items.add(item.mapToModel());
+        }
         recipe.setItems(items);
         return recipe;
 
@@ -87,6 +97,20 @@ public class RecipeEntity implements Serializable {
         return this;
     }
 
+    /**
+     * Only for a new recipe, item changes of an existing one get recomputed in SQL (see RecipeDB).
+     *
+     * @param item inserted item
+     * @return this with the nutrition of the item added
+     */
+    public RecipeEntity addNutrition(RecipeItemEntity item) {
+        this.kcal = (kcal != null ? kcal : 0f) + item.getKcal();
+        this.carbohydrates = (carbohydrates != null ? carbohydrates : 0f) + item.getCarbohydrates();
+        this.protein = (protein != null ? protein : 0f) + item.getProtein();
+        this.fat = (fat != null ? fat : 0f) + item.getFat();
+        return this;
+    }
+
     // === OBJECT DEFAULTS =============================================================================================
 
     @Override
@@ -0,0 +1,161 @@
+package com.freshplanner.api.service.recipe;
+
+import com.freshplanner.api.controller.model.Recipe;
+import com.freshplanner.api.controller.model.RecipeMatch;
+import com.freshplanner.api.controller.model.Suggestion;
+import com.freshplanner.api.enums.Match;
+import com.freshplanner.api.service.catalog.CatalogSnapshot;
+import com.freshplanner.api.utility.ApiLogger;
+import com.freshplanner.api.utility.CategoryRegistry;
+import com.freshplanner.api.utility.MinHashIndex;
+import com.freshplanner.api.utility.PostingIndex;
+import com.freshplanner.api.utility.PrefixIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * <h2>Recipe Index</h2>
+ * In-memory search structures over the recipes.
+ * Gets built from the {@link CatalogSnapshot} (or the database if it is outdated) on startup
+ * and kept up to date by the writes in {@link RecipeDB}.
+ */
+@Component
+class RecipeIndex {
+
+    private final RecipeRepo recipeRepo;
+    private final CatalogSnapshot catalogSnapshot;
+
+    private final PrefixIndex prefixes = new PrefixIndex();
+    private final PostingIndex ingredients = new PostingIndex();
+    private final IngredientMatrix ingredientMatrix = new IngredientMatrix();
+    private final MinHashIndex similarity = new MinHashIndex();
+    private final CategoryRegistry categoryRegistry = new CategoryRegistry();
+    private final Map<Integer, String> categoryOf = new HashMap<>();
+
+    @Autowired
+    RecipeIndex(RecipeRepo recipeRepo, CatalogSnapshot catalogSnapshot) {
+        this.recipeRepo = recipeRepo;
+        this.catalogSnapshot = catalogSnapshot;
+    }
+
+    // === BUILD =======================================================================================================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        long start = System.currentTimeMillis();
+        Optional<List<Recipe>> snapshot = catalogSnapshot.loadRecipes();
+        List<Recipe> recipes = snapshot.orElseGet(() -> recipeRepo.findAll()
+                .stream().map(RecipeEntity::mapToModel).collect(Collectors.toList()));
+        rebuild(recipes);
+        ApiLogger.info("Indexed " + recipes.size() + " recipes from the " + (snapshot.isPresent() ? "snapshot" : "database")
+                + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    synchronized void rebuild(Collection<Recipe> recipes) {
+        prefixes.clear();
+        ingredients.clear();
+        ingredientMatrix.clear();
+        similarity.clear();
+        categoryOf.clear();
+        categoryRegistry.reset(Collections.emptyMap());
+        recipes.forEach(this::put);
+    }
+
+    // === UPDATE ======================================================================================================
+
+    /**
+     * @param recipe inserted or updated object with its items
+     */
+    synchronized void put(Recipe recipe) {
+        prefixes.put(recipe.getId(), recipe.getName());
+        List<Integer> productIds = recipe.getItems().stream().map(Recipe.Item::getProductId).collect(Collectors.toList());
+        ingredients.put(recipe.getId(), productIds);
+        ingredientMatrix.put(recipe);
+        similarity.put(recipe.getId(), productIds);
+        categoryRegistry.remove(categoryOf.put(recipe.getId(), recipe.getCategory()));
+        categoryRegistry.add(recipe.getCategory());
+    }
+
+    /**
+     * @param recipeId database id of the deleted object
+     */
+    synchronized void remove(Integer recipeId) {
+        prefixes.remove(recipeId);
+        ingredients.remove(recipeId);
+        ingredientMatrix.remove(recipeId);
+        similarity.remove(recipeId);
+        categoryRegistry.remove(categoryOf.remove(recipeId));
+    }
+
+    /**
+     * Replaces the categories with the state of the database.
+     *
+     * @param categoryCounts number of recipes per category
+     */
+    synchronized void resetCategories(Map<String, Long> categoryCounts) {
+        categoryRegistry.reset(categoryCounts);
+    }
+
+    // === SEARCH ======================================================================================================
+
+    /**
+     * @return categories in use with ETag
+     */
+    CategoryRegistry.Snapshot getCategories() {
+        return categoryRegistry.getSnapshot();
+    }
+
+    /**
+     * @param prefix start of the name
+     * @param limit  maximum number of results
+     * @return matching recipes in alphabetical order
+     */
+    List<Suggestion> suggestByName(String prefix, int limit) {
+        return prefixes.suggest(prefix, limit);
+    }
+
+    /**
+     * @param productIds ingredients
+     * @param match      recipes with all or with any of the ingredients
+     * @param after      id of the last recipe of the previous page
+     * @param limit      page size
+     * @return ascending ids of the matching recipes
+     */
+    List<Integer> findByProducts(Collection<Integer> productIds, Match match, int after, int limit) {
+        int[] recipeIds = match == Match.ALL
+                ? ingredients.all(productIds, after, limit)
+                : ingredients.any(productIds, after, limit);
+        return Arrays.stream(recipeIds).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * @param available available count per product id
+     * @param limit     maximum number of results
+     * @return recipes with at least one available ingredient, most covered first
+     */
+    List<RecipeMatch> rankByIngredients(Map<Integer, Float> available, int limit) {
+        return ingredientMatrix.rank(available, limit);
+    }
+
+    /**
+     * @param recipeId database id
+     * @return true if the recipe is indexed
+     */
+    boolean contains(Integer recipeId) {
+        return similarity.contains(recipeId);
+    }
+
+    /**
+     * @param recipeId database id
+     * @param limit    maximum number of results
+     * @return Jaccard similarity of the ingredients per recipe id, most similar first
+     */
+    Map<Integer, Float> findSimilar(Integer recipeId, int limit) {
+        return similarity.similar(recipeId, limit);
+    }
+}
@@ -1,8 +1,18 @@
 package com.freshplanner.api.service.recipe;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 interface RecipeItemRepo extends JpaRepository<RecipeItemEntity, RecipeItemEntity.Key> {
+
+    @Query("select i.product.id, i.count from RecipeItem i where i.recipe.id = :recipeId")
+    List<Object[]> findCountsByRecipeId(Integer recipeId);
+
+    @Query("select i.recipe.id, i.product.id, i.count from RecipeItem i where i.recipe.id in :recipeIds")
+    List<Object[]> findCountsByRecipeIds(Collection<Integer> recipeIds);
 }
@@ -1,20 +1,74 @@
 package com.freshplanner.api.service.recipe;
 
+import com.freshplanner.api.controller.model.RecipeSummary;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import javax.transaction.Transactional;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 interface RecipeRepo extends JpaRepository<RecipeEntity, Integer> {
 
+    List<RecipeEntity> findByIdGreaterThanOrderById(Integer after, Pageable pageable);
+
+    @Query("select r.id from Recipe r where r.id in :recipeIds")
+    List<Integer> findExistingIds(Collection<Integer> recipeIds);
+
     @Query("select r from Recipe r where r.name like %:name%")
     List<RecipeEntity> searchByName(String name);
 
     @Query("select r from Recipe r where r.category like %:category%")
     List<RecipeEntity> searchByCategory(String category);
 
-    @Query(value = "select distinct r.category from Recipe r where r.category is not NULL")
-    List<String> findAllCategories();
+    // === SUMMARY (constructor projection, never loads the items) ======================================================
+
+    String SUMMARY = "select new com.freshplanner.api.controller.model.RecipeSummary(" +
+            "r.id, r.name, r.category, r.duration, r.kcal, r.carbohydrates, r.protein, r.fat) from Recipe r ";
+
+    @Query(SUMMARY + "where r.id > :after order by r.id")
+    List<RecipeSummary> findSummariesAfter(Integer after, Pageable pageable);
+
+    @Query(SUMMARY + "where r.id in :recipeIds order by r.id")
+    List<RecipeSummary> findSummariesByIds(Collection<Integer> recipeIds);
+
+    @Query(SUMMARY + "where r.name like %:name% and r.id > :after order by r.id")
+    List<RecipeSummary> searchSummariesByName(String name, Integer after, Pageable pageable);
+
+    @Query(SUMMARY + "where r.category like %:category% and r.id > :after order by r.id")
+    List<RecipeSummary> searchSummariesByCategory(String category, Integer after, Pageable pageable);
+
+    // =================================================================================================================
+
+    @Query("select r.category, count(r) from Recipe r where r.category is not NULL group by r.category")
+    List<Object[]> countCategories();
+
+    String NUTRITION_SUMS = "select ri.recipe_id, sum(p.kcal * ri.count) as kcal, sum(p.carbohydrates * ri.count) as carbohydrates, " +
+            "sum(p.protein * ri.count) as protein, sum(p.fat * ri.count) as fat " +
+            "from recipe_items ri join products p on p.id = ri.product_id ";
+    String SET_NUTRITION = "set r.kcal = coalesce(t.kcal, 0), r.carbohydrates = coalesce(t.carbohydrates, 0), " +
+            "r.protein = coalesce(t.protein, 0), r.fat = coalesce(t.fat, 0) ";
+
+    @Transactional
+    @Modifying
+    @Query(value = "update recipes r left join (" + NUTRITION_SUMS + "where ri.recipe_id in :recipeIds group by ri.recipe_id) t " +
+            "on t.recipe_id = r.id " + SET_NUTRITION + "where r.id in :recipeIds", nativeQuery = true)
+    int recomputeNutritionByRecipes(Collection<Integer> recipeIds);
+
+    @Query(value = "select distinct recipe_id from recipe_items where product_id = :productId", nativeQuery = true)
+    List<Integer> findRecipeIdsByProduct(Integer productId);
+
+    // row locks (in id order) that serialize the item changes of a recipe, so every recompute sees the committed items
+    @Query(value = "select id from recipes where id in :recipeIds order by id for update", nativeQuery = true)
+    List<Integer> lockByIds(Collection<Integer> recipeIds);
+
+    @Transactional
+    @Modifying
+    @Query(value = "update recipes r left join (" + NUTRITION_SUMS + "group by ri.recipe_id) t on t.recipe_id = r.id " +
+            SET_NUTRITION + "where r.kcal is null", nativeQuery = true)
+    int recomputeMissingNutrition();
 }
@@ -0,0 +1,26 @@
+package com.freshplanner.api.service.recipe;
+
+import com.freshplanner.api.exception.ElementNotFoundException;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface RecipeService {
+    /**
+     * SELECT recipeItem.product, recipeItem.count WHERE recipeId
+     *
+     * @param recipeId database id
+     * @return count per product id of the recipe items
+     * @throws ElementNotFoundException if id does not exist
+     */
+    Map<Integer, Float> selectRecipeIngredients(Integer recipeId) throws ElementNotFoundException;
+
+    /**
+     * SELECT recipeItem.recipe, recipeItem.product, recipeItem.count WHERE recipeId IN recipeIds
+     *
+     * @param recipeIds database ids
+     * @return count per product id of the recipe items, per recipe id
+     * @throws ElementNotFoundException with all ids that do not exist
+     */
+    Map<Integer, Map<Integer, Float>> selectRecipeIngredients(Collection<Integer> recipeIds) throws ElementNotFoundException;
+}
@@ -0,0 +1,56 @@
+package com.freshplanner.api.service.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * <h2>Storage Change Entity</h2>
+ * Last revision of the storage that changed the item, written through the ChangeLog of the StorageDB.
+ * No relations, so the tombstones of removed items do not depend on the item or product rows.
+ */
+@NoArgsConstructor
+@Getter
+@Entity(name = "StorageChange")
+@Table(name = "storage_changes", indexes = @Index(name = "storage_changes_revision", columnList = "storage_id, revision"))
+@IdClass(StorageChangeEntity.Key.class)
+public class StorageChangeEntity implements Serializable {
+
+    @Id
+    @Column(name = "storage_id", nullable = false)
+    private Integer storageId;
+
+    @Id
+    @Column(name = "product_id", nullable = false)
+    private Integer productId;
+
+    @Column(name = "revision", nullable = false)
+    private Long revision;
+
+    @Column(name = "deleted", nullable = false)
+    private Boolean deleted;
+
+    @Override
+    public String toString() {
+        return "StorageChangeEntity{" +
+                "storageId=" + storageId +
+                ", productId=" + productId +
+                ", revision=" + revision +
+                ", deleted=" + deleted +
+                '}';
+    }
+
+    // === ID CLASS ====================================================================================================
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Integer storageId;
+        private Integer productId;
+    }
+}
@@ -1,32 +1,62 @@
 package com.freshplanner.api.service.storage;
 
 import com.freshplanner.api.controller.model.Storage;
+import com.freshplanner.api.enums.Unit;
 import com.freshplanner.api.exception.ElementNotFoundException;
 import com.freshplanner.api.exception.NoAccessException;
 import com.freshplanner.api.service.product.ProductService;
 import com.freshplanner.api.service.user.UserEntity;
 import com.freshplanner.api.service.user.UserService;
+import com.freshplanner.api.utility.ChangeLog;
+import com.freshplanner.api.utility.MembershipCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Component;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Component
 public class StorageDB {
 
+    private static final String UPSERT_ITEM_SQL = "insert into storage_items (storage_id, product_id, count) values (?, ?, ?) " +
+            "on duplicate key update count = values(count)";
+
     private final StorageRepo storageRepo;
     private final StorageItemRepo storageItemRepo;
     private final ProductService productService;
     private final UserService userService;
+    private final JdbcTemplate jdbcTemplate;
+    private final MembershipCache members;
+    private final ChangeLog changes;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Autowired
-    public StorageDB(StorageRepo storageRepo, StorageItemRepo storageItemRepo, ProductService productService, UserService userService) {
+    public StorageDB(StorageRepo storageRepo, StorageItemRepo storageItemRepo, ProductService productService, UserService userService,
+                     JdbcTemplate jdbcTemplate, @Value("${app.settings.cache.membership.ttl-ms}") long membershipTtl) {
         this.storageRepo = storageRepo;
         this.storageItemRepo = storageItemRepo;
         this.productService = productService;
         this.userService = userService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.members = new MembershipCache(membershipTtl, storageRepo::findStorageIdsOfUser);
+        this.changes = new ChangeLog(jdbcTemplate, StorageEntity.class, "storage_items", "storage_changes", "storage_id");
     }
 
     // === SELECT ======================================================================================================
@@ -41,14 +71,42 @@ public class StorageDB {
      * @throws NoAccessException        if user is no owner
      */
     public StorageEntity selectStorageById(String username, Integer storageId) throws ElementNotFoundException, NoAccessException {
-        StorageEntity storage = selectStorageById(storageId);
-        if (storage.containsUser(username)) {
-            return storage;
-        } else {
+        checkAccess(username, storageId);
+        return selectStorageById(storageId);
+    }
+
+    /**
+     * Decides the access with the {@link MembershipCache} before anything gets loaded.
+     *
+     * @param username  as owner
+     * @param storageId database id
+     * @throws ElementNotFoundException if id does not exist
+     * @throws NoAccessException        if user is no owner
+     */
+    private void checkAccess(String username, Integer storageId) throws ElementNotFoundException, NoAccessException {
+        if (!members.isMember(username, storageId)) {
+            if (!storageRepo.existsById(storageId)) {
+                throw new ElementNotFoundException(StorageEntity.class, storageId.toString());
+            }
             throw new NoAccessException(username, StorageEntity.class, storageId.toString());
         }
     }
 
+    /**
+     * SELECT storageItem.product, storageItem.count WHERE storageId
+     *
+     * @param username  as owner
+     * @param storageId database id
+     * @return count per product id of the storage items
+     * @throws ElementNotFoundException if id does not exist
+     * @throws NoAccessException        if user is no owner
+     */
+    public Map<Integer, Float> selectStorageItemCounts(String username, Integer storageId) throws ElementNotFoundException, NoAccessException {
+        return selectStorageById(username, storageId).getStorageItems().stream()
+                .collect(Collectors.toMap(item -> item.getProduct().getId(),
+                        item -> item.getCount() != null ? item.getCount() : 0f, Float::sum));
+    }
+
     private StorageEntity selectStorageById(Integer storageId) throws ElementNotFoundException {
         Optional<StorageEntity> storage = storageRepo.findById(storageId);
         if (storage.isPresent()) {
@@ -59,13 +117,17 @@ public class StorageDB {
     }
 
     /**
-     * SELECT storage WHERE user
+     * SELECT storage WHERE user AND id > after ORDER BY id LIMIT limit
+     * (two statements: the ids of the page, then the storages with users, items and products)
      *
      * @param username as owner
-     * @return list with result objects
+     * @param after    id of the last object of the previous page
+     * @param limit    page size
+     * @return list with the objects of the page
      */
-    public List<StorageEntity> selectUserStorages(String username) {
-        return storageRepo.findStoragesByUsername(username);
+    public List<StorageEntity> selectUserStorages(String username, Integer after, int limit) {
+        List<Integer> storageIds = storageRepo.findStorageIdsByUsername(username, after, limit);
+        return storageIds.isEmpty() ? Collections.emptyList() : storageRepo.findStoragesWithItemsByIds(storageIds);
     }
 
     private StorageItemEntity selectStorageItemById(Integer storageId, Integer productId) throws ElementNotFoundException {
@@ -78,6 +140,42 @@ public class StorageDB {
         }
     }
 
+    /**
+     * SELECT storageItem WHERE storageId AND revision > since
+     * <p>Revision and changes are read in one transaction, so they belong to the same state. Revision 0 gets all
+     * current items.</p>
+     *
+     * @param username  as owner
+     * @param storageId database id
+     * @param since     revision the client already has (0 for all items)
+     * @return added, updated and removed items since the revision
+     * @throws ElementNotFoundException if id does not exist
+     * @throws NoAccessException        if user is no owner
+     * @throws IllegalArgumentException if the revision is negative or newer than the current one
+     */
+    @Transactional
+    public Storage.Changes selectStorageChanges(String username, Integer storageId, long since)
+            throws ElementNotFoundException, NoAccessException, IllegalArgumentException {
+        checkAccess(username, storageId);
+        long revision = changes.selectRevision(storageId);
+        if (since < 0 || since > revision) {
+            throw new IllegalArgumentException("Revision must be between 0 and " + revision + " but was " + since);
+        }
+        List<Storage.Item> items = new ArrayList<>();
+        List<Integer> removedProductIds = new ArrayList<>();
+        List<Storage.Item> rows = since == 0
+                ? changes.selectItems(storageId, StorageDB::mapChange)
+                : changes.selectChanges(storageId, since, StorageDB::mapChange);
+        for (Storage.Item item : rows) {
+            if (item.getCount() != null) {
+                items.add(item);
+            } else {
+                removedProductIds.add(item.getProductId());
+            }
+        }
+        return new Storage.Changes(storageId, revision, items, removedProductIds);
+    }
+
     // === INSERT ======================================================================================================
 
     /**
@@ -91,7 +189,9 @@ public class StorageDB {
     @Transactional
     public StorageEntity insertStorage(String username, Storage storageModel) throws ElementNotFoundException {
         UserEntity user = userService.getUserByName(username);
-        return storageRepo.save(new StorageEntity(user, storageModel));
+        StorageEntity storage = storageRepo.save(new StorageEntity(user, storageModel));
+        members.invalidate(username);
+        return storage;
     }
 
     /**
@@ -107,12 +207,44 @@ public class StorageDB {
     @Transactional
     public StorageEntity insertStorageItem(String username, int storageId, Storage.Item storageItemModel) throws ElementNotFoundException, NoAccessException {
         StorageEntity storage = selectStorageById(username, storageId);
-        StorageItemEntity item = storageItemRepo.save(new StorageItemEntity(
+        long revision = changes.nextRevision(storageId);
+        storageItemRepo.save(new StorageItemEntity(
                 storage,
                 productService.selectProductById(storageItemModel.getProductId()),
                 storageItemModel.getCount()));
-        storage.getStorageItems().add(item);
-        return storage;
+        changes.record(storageId, revision, Collections.singletonList(storageItemModel.getProductId()), false);
+        return reloadStorage(storageId);
+    }
+
+    /**
+     * INSERT storageItem FOR EACH itemModel ON DUPLICATE KEY UPDATE count = itemModel.count
+     * <p>Constant number of queries: access check, products, one batch and the load of the storage.</p>
+     *
+     * @param username   as owner
+     * @param storageId  linked database id
+     * @param itemModels product ids with the new counts
+     * @return updated object
+     * @throws ElementNotFoundException with all product ids that do not exist or if the storage does not exist
+     * @throws NoAccessException        if user is no owner
+     * @throws IllegalArgumentException if a product id is missing or appears twice
+     */
+    @Transactional
+    public StorageEntity upsertStorageItems(String username, Integer storageId, List<Storage.Item> itemModels)
+            throws ElementNotFoundException, NoAccessException, IllegalArgumentException {
+        checkAccess(username, storageId);
+        Map<Integer, Float> counts = new LinkedHashMap<>();
+        for (Storage.Item itemModel : itemModels) {
+            if (itemModel.getProductId() == null) {
+                throw new IllegalArgumentException("Storage item without product id");
+            }
+            Float count = itemModel.getCount() != null && itemModel.getCount() >= 0 ? itemModel.getCount() : 0f;
+            if (counts.put(itemModel.getProductId(), count) != null) {
+                throw new IllegalArgumentException("Product " + itemModel.getProductId() + " appears more than once");
+            }
+        }
+        productService.selectProductsByIds(counts.keySet());
+
+        return batchItems(UPSERT_ITEM_SQL, storageId, counts);
     }
 
     // === UPDATE ======================================================================================================
@@ -131,7 +263,9 @@ public class StorageDB {
     public StorageEntity updateAddUser(String usernameOwner, int storageId, String usernameMember) throws ElementNotFoundException, NoAccessException {
         StorageEntity storage = selectStorageById(usernameOwner, storageId);
         UserEntity user = userService.getUserByName(usernameMember);
-        return storageRepo.save(storage.addUser(user));
+        storage = storageRepo.save(storage.addUser(user));
+        members.invalidate(user.getName());
+        return storage;
     }
 
     /**
@@ -148,21 +282,34 @@ public class StorageDB {
     public StorageEntity updateRemoveUser(String usernameOwner, int storageId, String usernameMember) throws ElementNotFoundException, NoAccessException {
         StorageEntity storage = selectStorageById(usernameOwner, storageId);
         UserEntity user = userService.getUserByName(usernameMember);
-        return storageRepo.save(storage.removeUser(user));
+        storage = storageRepo.save(storage.removeUser(user));
+        members.invalidate(user.getName());
+        return storage;
     }
 
     /**
-     * UPDATE storage
+     * UPDATE storage SET name, version = version + 1 WHERE id AND version = storageModel.version
+     * <p>Optimistic if the model has a version: check and write are one statement, so an outdated version always
+     * fails. Without a version the last write wins. The version covers the name and the members only, items change
+     * through the atomic item operations (count delta, upsert) and are tracked by the revision.</p>
      *
      * @param username     as owner
      * @param storageModel with input data
      * @return updated object
-     * @throws NoAccessException        if user is no owner
-     * @throws ElementNotFoundException if id does not exist
+     * @throws NoAccessException                       if user is no owner
+     * @throws ElementNotFoundException                if id does not exist
+     * @throws ObjectOptimisticLockingFailureException if the version of the model is outdated
      */
+    @Transactional
     public StorageEntity updateStorage(String username, Storage storageModel) throws NoAccessException, ElementNotFoundException {
         StorageEntity storage = this.selectStorageById(username, storageModel.getId());
-        return storageRepo.save(storage.update(storageModel));
+        if (storageModel.getVersion() == null) {
+            return storageRepo.save(storage.update(storageModel));
+        }
+        if (storageRepo.updateNameIfVersion(storage.getId(), storageModel.getName(), storageModel.getVersion()) == 0) {
+            throw new ObjectOptimisticLockingFailureException(StorageEntity.class, storage.getId());
+        }
+        return reloadStorage(storage.getId());
     }
 
     /**
@@ -175,12 +322,45 @@ public class StorageDB {
      * @throws ElementNotFoundException if id does not exist
      * @throws NoAccessException        if user is no owner
      */
+    @Transactional
     public StorageItemEntity updateStorageItem(String username, Integer storageId, Storage.Item itemModel) throws ElementNotFoundException, NoAccessException {
+        checkAccess(username, storageId);
         StorageItemEntity item = this.selectStorageItemById(storageId, itemModel.getProductId());
-        if (!item.getStorage().containsUser(username)) {
-            throw new NoAccessException(username, StorageEntity.class, storageId.toString());
+        long revision = changes.nextRevision(storageId);
+        item = storageItemRepo.save(item.update(itemModel));
+        changes.record(storageId, revision, Collections.singletonList(itemModel.getProductId()), false);
+        return item;
+    }
+
+    /**
+     * UPDATE storageItem SET count = GREATEST(count + delta, 0) WHERE storageId and productId
+     * <p>One atomic statement instead of read-modify-write, a missing item only gets inserted for a positive delta.</p>
+     *
+     * @param username  as owner
+     * @param storageId linked database id
+     * @param productId linked database id
+     * @param delta     change of the count, the result is never negative
+     * @return updated object
+     * @throws ElementNotFoundException if id does not exist or the item is missing for a delta <= 0
+     * @throws NoAccessException        if user is no owner
+     * @throws IllegalArgumentException if the delta is not a finite number
+     */
+    @Transactional
+    public StorageItemEntity updateStorageItemCount(String username, Integer storageId, Integer productId, float delta)
+            throws ElementNotFoundException, NoAccessException, IllegalArgumentException {
+        if (!Float.isFinite(delta)) {
+            throw new IllegalArgumentException("Delta must be a finite number but was " + delta);
         }
-        return storageItemRepo.save(item.update(itemModel));
+        checkAccess(username, storageId);
+        productService.selectProductById(productId);
+        long revision = changes.nextRevision(storageId);
+        if (delta > 0) {
+            storageItemRepo.addToCount(storageId, productId, delta);
+        } else if (storageItemRepo.updateCount(storageId, productId, delta) == 0) {
+            throw new ElementNotFoundException(StorageItemEntity.class, new StorageItemEntity.Key(storageId, productId).toString());
+        }
+        changes.record(storageId, revision, Collections.singletonList(productId), false);
+        return selectStorageItemById(storageId, productId);
     }
 
     // === DELETE ======================================================================================================
@@ -195,12 +375,15 @@ public class StorageDB {
      * @throws ElementNotFoundException if id does not exist
      * @throws NoAccessException        if user is no owner
      */
+    @Transactional
     public StorageEntity deleteStorageItem(String username, Integer storageId, Integer productId) throws ElementNotFoundException, NoAccessException {
         StorageEntity storage = this.selectStorageById(username, storageId);
         StorageItemEntity item = this.selectStorageItemById(storageId, productId);
+        long revision = changes.nextRevision(storageId);
         storageItemRepo.delete(item);
         storage.getStorageItems().remove(item);
-        return storage;
+        changes.record(storageId, revision, Collections.singletonList(productId), true);
+        return reloadStorage(storageId);
     }
 
     /**
@@ -212,9 +395,59 @@ public class StorageDB {
      * @throws ElementNotFoundException if id does not exist
      * @throws NoAccessException        if user is no owner
      */
+    @Transactional
     public StorageEntity deleteStorageById(String username, Integer storageId) throws ElementNotFoundException, NoAccessException {
         StorageEntity storage = this.selectStorageById(username, storageId);
         storageRepo.delete(storage);
+        changes.delete(storageId);
+        members.invalidate(storage.getUsers().stream().map(UserEntity::getName).collect(Collectors.toList()));
         return storage;
     }
+
+    // === INTERNAL ====================================================================================================
+
+    private StorageEntity batchItems(String sql, Integer storageId, Map<Integer, Float> counts) throws ElementNotFoundException {
+        long revision = changes.nextRevision(storageId);
+        List<Map.Entry<Integer, Float>> rows = new ArrayList<>(counts.entrySet());
+        entityManager.flush();
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int i) throws SQLException {
+                statement.setInt(1, storageId);
+                statement.setInt(2, rows.get(i).getKey());
+                statement.setFloat(3, rows.get(i).getValue());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+        changes.record(storageId, revision, counts.keySet(), false);
+        return reloadStorage(storageId);
+    }
+
+    private StorageEntity reloadStorage(Integer storageId) throws ElementNotFoundException {
+        // the loaded storage still holds the old revision and item counts
+        entityManager.flush();
+        entityManager.clear();
+        return selectStorageById(storageId);
+    }
+
+    /**
+     * Row of the {@link ChangeLog}, the count is null if the item got removed.
+     */
+    private static Storage.Item mapChange(ResultSet row, int rowNumber) throws SQLException {
+        Storage.Item item = new Storage.Item();
+        item.setProductId(row.getInt("product_id"));
+        item.setProductName(row.getString("name"));
+        item.setCategory(row.getString("category"));
+        float packageSize = row.getFloat("package_size");
+        item.setPackageSize(row.wasNull() ? null : packageSize);
+        float count = row.getFloat("count");
+        item.setCount(row.wasNull() ? null : count);
+        int unit = row.getInt("unit");
+        item.setUnit(row.wasNull() ? null : Unit.values()[unit]);
+        return item;
+    }
 }
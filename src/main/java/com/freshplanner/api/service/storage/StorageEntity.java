@@ -34,6 +34,16 @@ public class StorageEntity implements Serializable {
     @Column(name = "name", nullable = false)
     private String name;
 
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint not null default 0")
+    @Setter(AccessLevel.NONE)
+    private Long version;
+
+    // written by the ChangeLog only
+    @Column(name = "revision", nullable = false, insertable = false, updatable = false, columnDefinition = "bigint not null default 0")
+    @Setter(AccessLevel.NONE)
+    private Long revision;
+
     @ManyToMany(cascade = CascadeType.MERGE, fetch = FetchType.EAGER)
     @JoinTable(name = "user_storages",
             joinColumns = {@JoinColumn(name = "storage_id", referencedColumnName = "id")},
@@ -49,6 +59,8 @@ public class StorageEntity implements Serializable {
         Storage storage = new Storage();
         storage.setId(id);
         storage.setName(name);
+        storage.setVersion(version);
+        storage.setRevision(revision != null ? revision : 0L);
         storage.setUsers(users.stream().map(UserEntity::getName).collect(Collectors.toList()));
         storage.setItems(storageItems.stream().map(StorageItemEntity::mapToModel).collect(Collectors.toList()));
         return storage;
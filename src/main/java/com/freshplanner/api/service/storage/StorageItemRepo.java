@@ -1,8 +1,23 @@
 package com.freshplanner.api.service.storage;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
 interface StorageItemRepo extends JpaRepository<StorageItemEntity, StorageItemEntity.Key> {
+
+    // one atomic statement, concurrent deltas on the same item can not overwrite each other (only for delta > 0)
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "insert into storage_items (storage_id, product_id, count) values (:storageId, :productId, greatest(:delta, 0))" +
+            " on duplicate key update count = greatest(count + :delta, 0)", nativeQuery = true)
+    int addToCount(@Param("storageId") Integer storageId, @Param("productId") Integer productId, @Param("delta") Float delta);
+
+    // like addToCount, but never inserts: returns 0 if the item does not exist
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "update storage_items set count = greatest(count + :delta, 0) where storage_id = :storageId and product_id = :productId",
+            nativeQuery = true)
+    int updateCount(@Param("storageId") Integer storageId, @Param("productId") Integer productId, @Param("delta") Float delta);
 }
@@ -1,16 +1,35 @@
 package com.freshplanner.api.service.storage;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 interface StorageRepo extends JpaRepository<StorageEntity, Integer> {
 
+    // check and write in one statement, the version also moves if the name stays the same
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Storage s set s.name = coalesce(:name, s.name), s.version = s.version + 1 where s.id = :storageId and s.version = :version")
+    int updateNameIfVersion(@Param("storageId") Integer storageId, @Param("name") String name, @Param("version") Long version);
+
     // native query because of non-case-sensitivity on the username
-    @Query(value = "select * from storages s join user_storages us on s.id = us.storage_id where us.user_id = :username", nativeQuery = true)
-    List<StorageEntity> findStoragesByUsername(@Param("username") String username);
+    @Query(value = "select s.id from storages s join user_storages us on s.id = us.storage_id where us.user_id = :username" +
+            " and s.id > :after order by s.id limit :limit", nativeQuery = true)
+    List<Integer> findStorageIdsByUsername(@Param("username") String username, @Param("after") Integer after, @Param("limit") Integer limit);
+
+    @Query(value = "select us.storage_id from user_storages us where us.user_id = :username", nativeQuery = true)
+    List<Integer> findStorageIdsOfUser(@Param("username") String username);
+
+    // one statement for the storages with users, items and products, instead of secondary selects per storage
+    @QueryHints(@QueryHint(name = "hibernate.query.passDistinctThrough", value = "false"))
+    @Query("select distinct s from Storage s left join fetch s.users u left join fetch u.roles" +
+            " left join fetch s.storageItems i left join fetch i.product where s.id in :storageIds order by s.id")
+    List<StorageEntity> findStoragesWithItemsByIds(Collection<Integer> storageIds);
 }
@@ -0,0 +1,33 @@
+package com.freshplanner.api.utility;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * <h2>After Commit</h2>
+ * Defers changes of in-memory state (indexes, caches) until the database change is committed, so a rolled back
+ * transaction leaves no trace in memory.
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    /**
+     * Runs the action after the commit of the current transaction, or now if there is no transaction.
+     *
+     * @param action change of in-memory state, gets dropped on rollback
+     */
+    public static void run(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.freshplanner.api.utility;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * <h2>Category Registry</h2>
+ * Reference-counted set of the categories in use. Every change rebuilds an immutable, sorted snapshot
+ * with a strong ETag derived from its content, so reads never have to query or copy anything.
+ */
+public class CategoryRegistry {
+
+    private final Map<String, Long> counts = new HashMap<>();
+    private volatile Snapshot snapshot = createSnapshot(Collections.emptySet());
+
+    /**
+     * @param category used by one more element, null gets ignored
+     */
+    public synchronized void add(String category) {
+        if (category != null && counts.merge(category, 1L, Long::sum) == 1L) {
+            snapshot = createSnapshot(counts.keySet());
+        }
+    }
+
+    /**
+     * @param category used by one element less, null gets ignored
+     */
+    public synchronized void remove(String category) {
+        if (category != null && counts.computeIfPresent(category, (key, count) -> count > 1 ? count - 1 : null) == null) {
+            snapshot = createSnapshot(counts.keySet());
+        }
+    }
+
+    /**
+     * Replaces all categories.
+     *
+     * @param categoryCounts number of elements per category
+     */
+    public synchronized void reset(Map<String, Long> categoryCounts) {
+        counts.clear();
+        categoryCounts.forEach((category, count) -> {
+            if (category != null && count > 0) {
+                counts.put(category, count);
+            }
+        });
+        snapshot = createSnapshot(counts.keySet());
+    }
+
+    /**
+     * @return current categories with ETag
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private static Snapshot createSnapshot(Set<String> categories) {
+        List<String> sorted = new ArrayList<>(categories);
+        Collections.sort(sorted);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            sorted.forEach(category -> {
+                digest.update(category.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            });
+            String hash = HexFormat.of().formatHex(digest.digest(), 0, 8);
+            return new Snapshot(Collections.unmodifiableList(sorted), "\"" + hash + "\"");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // === SNAPSHOT ====================================================================================================
+
+    @Getter
+    @AllArgsConstructor
+    public static class Snapshot {
+        private final List<String> categories;
+        private final String eTag;
+    }
+}
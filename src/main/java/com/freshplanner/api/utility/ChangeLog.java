@@ -0,0 +1,139 @@
+package com.freshplanner.api.utility;
+
+import com.freshplanner.api.exception.ElementNotFoundException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.persistence.Table;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <h2>Change Log</h2>
+ * Revision per container (storage, cart) and the last revision that changed each of its items, so clients can
+ * fetch only the items that changed since the revision they already have.
+ * <ul>
+ *     <li>Every item change bumps the revision of the container and stores it with the product id (one row per
+ *     item, removed items stay as tombstone until the container gets deleted).</li>
+ *     <li>Has to run in the transaction of the change: {@link #nextRevision(Integer)} comes before the item writes,
+ *     so the row lock on the container is taken first (item inserts hold a shared lock on it for the foreign key,
+ *     upgrading that lock afterwards deadlocks concurrent writers). The lock also keeps the revisions in commit
+ *     order, so a reader can never see a revision without the changes before it.</li>
+ *     <li>Changes are idempotent, a client with an older revision gets a superset of the changes.</li>
+ *     <li>Items from before the change log have no change rows, so revision 0 is answered from the item table.</li>
+ * </ul>
+ * Expects the container entities to have a 'revision' column and a change table (container id, product id, revision,
+ * deleted) next to the item table (container id, product id, count).
+ */
+public class ChangeLog {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Class<?> containerClass;
+    private final String nextRevisionSql;
+    private final String selectRevisionSql;
+    private final String recordSql;
+    private final String selectChangesSql;
+    private final String selectItemsSql;
+    private final String deleteSql;
+
+    /**
+     * @param jdbcTemplate   connection of the current transaction
+     * @param containerClass entity with the revision column
+     * @param itemTable      table with the current items
+     * @param changeTable    table with the revision per item
+     * @param idColumn       container id column of the item and change table
+     */
+    public ChangeLog(JdbcTemplate jdbcTemplate, Class<?> containerClass, String itemTable, String changeTable, String idColumn) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.containerClass = containerClass;
+        String containerTable = containerClass.getAnnotation(Table.class).name();
+        this.nextRevisionSql = "update " + containerTable + " set revision = last_insert_id(revision + 1) where id = ?";
+        this.selectRevisionSql = "select revision from " + containerTable + " where id = ?";
+        this.recordSql = "insert into " + changeTable + " (" + idColumn + ", product_id, revision, deleted) values (?, ?, ?, ?) " +
+                "on duplicate key update revision = values(revision), deleted = values(deleted)";
+        this.selectChangesSql = "select c.product_id, i.count, p.name, p.category, p.package_size, p.unit from " + changeTable + " c " +
+                "left join " + itemTable + " i on i." + idColumn + " = c." + idColumn + " and i.product_id = c.product_id " +
+                "left join products p on p.id = c.product_id " +
+                "where c." + idColumn + " = ? and c.revision > ? order by c.revision, c.product_id";
+        this.selectItemsSql = "select i.product_id, i.count, p.name, p.category, p.package_size, p.unit from " + itemTable + " i " +
+                "join products p on p.id = i.product_id where i." + idColumn + " = ? order by i.product_id";
+        this.deleteSql = "delete from " + changeTable + " where " + idColumn + " = ?";
+    }
+
+    /**
+     * Bumps the revision of the container and locks its row until the end of the transaction.
+     * Call it before the item writes.
+     *
+     * @param containerId database id of the container
+     * @return revision for {@link #record(Integer, long, Collection, boolean)}
+     * @throws ElementNotFoundException if the container does not exist (anymore)
+     */
+    public long nextRevision(Integer containerId) throws ElementNotFoundException {
+        // without a matched row last_insert_id() would still hold a value of an earlier statement
+        if (jdbcTemplate.update(nextRevisionSql, containerId) != 1) {
+            throw new ElementNotFoundException(containerClass, containerId.toString());
+        }
+        return jdbcTemplate.queryForObject("select last_insert_id()", Long.class);
+    }
+
+    /**
+     * Records the revision for the products.
+     *
+     * @param containerId database id of the container
+     * @param revision    from {@link #nextRevision(Integer)} of the same transaction
+     * @param productIds  changed items
+     * @param deleted     true if the items got removed
+     */
+    public void record(Integer containerId, long revision, Collection<Integer> productIds, boolean deleted) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(recordSql, new ArrayList<>(productIds), productIds.size(), (statement, productId) -> {
+            statement.setInt(1, containerId);
+            statement.setInt(2, productId);
+            statement.setLong(3, revision);
+            statement.setBoolean(4, deleted);
+        });
+    }
+
+    /**
+     * @param containerId database id of the container
+     * @return current revision, 0 if the container does not exist
+     */
+    public long selectRevision(Integer containerId) {
+        List<Long> revision = jdbcTemplate.queryForList(selectRevisionSql, Long.class, containerId);
+        return revision.isEmpty() ? 0L : revision.get(0);
+    }
+
+    /**
+     * Columns of a row: product_id, count (null if the item got removed), name, category, package_size, unit.
+     * Read it in the same transaction as {@link #selectRevision(Integer)}.
+     *
+     * @param containerId database id of the container
+     * @param since       revision the client already has
+     * @param itemMapper  maps a row to the item model
+     * @return changed items in the order of their revision
+     */
+    public <T> List<T> selectChanges(Integer containerId, long since, RowMapper<T> itemMapper) {
+        return jdbcTemplate.query(selectChangesSql, itemMapper, containerId, since);
+    }
+
+    /**
+     * Same columns as {@link #selectChanges(Integer, long, RowMapper)}, for a client without a revision.
+     *
+     * @param containerId database id of the container
+     * @param itemMapper  maps a row to the item model
+     * @return all current items
+     */
+    public <T> List<T> selectItems(Integer containerId, RowMapper<T> itemMapper) {
+        return jdbcTemplate.query(selectItemsSql, itemMapper, containerId);
+    }
+
+    /**
+     * @param containerId database id of the deleted container
+     */
+    public void delete(Integer containerId) {
+        jdbcTemplate.update(deleteSql, containerId);
+    }
+}
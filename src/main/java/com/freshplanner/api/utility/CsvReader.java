@@ -0,0 +1,82 @@
+package com.freshplanner.api.utility;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <h2>CSV Reader</h2>
+ * Reads comma separated lines one by one, so the input never has to be held in memory.
+ * Fields can be quoted with '"' to contain commas, a doubled quote inside a quoted field is a literal quote.
+ * Blank lines get skipped.
+ */
+public class CsvReader implements Iterator<String[]> {
+
+    private final BufferedReader reader;
+    private String nextLine;
+
+    public CsvReader(Reader reader) {
+        this.reader = new BufferedReader(reader);
+        this.nextLine = readLine();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextLine != null;
+    }
+
+    @Override
+    public String[] next() {
+        if (nextLine == null) {
+            throw new NoSuchElementException();
+        }
+        String line = nextLine;
+        nextLine = readLine();
+        return split(line);
+    }
+
+    private String readLine() {
+        try {
+            String line;
+            do {
+                line = reader.readLine();
+            } while (line != null && line.isBlank());
+            return line;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String[] split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields.toArray(new String[0]);
+    }
+}
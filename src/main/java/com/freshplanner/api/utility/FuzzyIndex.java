@@ -0,0 +1,227 @@
+package com.freshplanner.api.utility;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <h2>Fuzzy Index</h2>
+ * In-memory BK-tree over the words of element names for case-insensitive, typo-tolerant search.
+ * <ul>
+ *     <li>Every distinct word is a node, the children are keyed by their Levenshtein distance to the parent.</li>
+ *     <li>A lookup with distance k only descends into children with key d-k..d+k (triangle inequality),
+ *     so only a small part of the dictionary gets compared.</li>
+ *     <li>Every query word has to match a word of the name. Matches are ranked by the summed distance.</li>
+ *     <li>Words shorter than {@link #SHORT_WORD} characters allow at most one edit.</li>
+ * </ul>
+ */
+public class FuzzyIndex {
+
+    public static final int MAX_DISTANCE = 2;
+    private static final int SHORT_WORD = 5;
+
+    private Node root;
+    private final Map<String, Set<Integer>> postings = new HashMap<>();
+    private final Map<Integer, String> texts = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds or replaces the text of the element.
+     *
+     * @param id   element id
+     * @param text searchable text, null removes the element
+     */
+    public void put(Integer id, String text) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+            if (text == null) {
+                return;
+            }
+            String normalized = normalize(text);
+            texts.put(id, normalized);
+            for (String word : words(normalized)) {
+                postings.computeIfAbsent(word, key -> {
+                    insertWord(key);
+                    return new HashSet<>();
+                }).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removed words stay in the tree as empty nodes until the next {@link #clear()}.
+     *
+     * @param id element id
+     */
+    public void remove(Integer id) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all elements.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            root = null;
+            postings.clear();
+            texts.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param query       text with typos (case-insensitive)
+     * @param maxDistance allowed edits per word, 1 or 2
+     * @param limit       maximum number of results
+     * @return ids of the matching elements, closest match first
+     * @throws IllegalArgumentException if the distance is out of range
+     */
+    public List<Integer> search(String query, int maxDistance, int limit) throws IllegalArgumentException {
+        if (maxDistance < 1 || maxDistance > MAX_DISTANCE) {
+            throw new IllegalArgumentException("Edit distance must be between 1 and " + MAX_DISTANCE + " but was " + maxDistance);
+        }
+        Set<String> queryWords = words(normalize(query));
+        if (queryWords.isEmpty()) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            Map<Integer, Integer> distances = null;
+            for (String queryWord : queryWords) {
+                Map<Integer, Integer> matches = match(queryWord, queryWord.length() < SHORT_WORD ? 1 : maxDistance);
+                if (distances == null) {
+                    distances = matches;
+                } else {
+                    distances.keySet().retainAll(matches.keySet());
+                    distances.replaceAll((id, distance) -> distance + matches.get(id));
+                }
+                if (distances.isEmpty()) {
+                    return Collections.emptyList();
+                }
+            }
+            List<Integer> result = new ArrayList<>(distances.keySet());
+            Map<Integer, Integer> ranks = distances;
+            result.sort(Comparator
+                    .comparingInt((Integer id) -> ranks.get(id))
+                    .thenComparingInt(id -> texts.get(id).length())
+                    .thenComparing(id -> id));
+            return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // === INTERNAL ====================================================================================================
+
+    private static class Node {
+        private final String word;
+        private final Map<Integer, Node> children = new HashMap<>();
+
+        private Node(String word) {
+            this.word = word;
+        }
+    }
+
+    /**
+     * @return smallest distance of a matching word per element id
+     */
+    private Map<Integer, Integer> match(String queryWord, int maxDistance) {
+        Map<Integer, Integer> result = new HashMap<>();
+        Deque<Node> pending = new ArrayDeque<>();
+        if (root != null) {
+            pending.push(root);
+        }
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = distance(queryWord, node.word);
+            if (distance <= maxDistance) {
+                for (Integer id : postings.getOrDefault(node.word, Collections.emptySet())) {
+                    result.merge(id, distance, Math::min);
+                }
+            }
+            for (int d = Math.max(1, distance - maxDistance); d <= distance + maxDistance; d++) {
+                Node child = node.children.get(d);
+                if (child != null) {
+                    pending.push(child);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void insertWord(String word) {
+        if (root == null) {
+            root = new Node(word);
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = distance(word, node.word);
+            if (distance == 0) {
+                return; // word is still in the tree from a removed element
+            }
+            Node child = node.children.get(distance);
+            if (child == null) {
+                node.children.put(distance, new Node(word));
+                return;
+            }
+            node = child;
+        }
+    }
+
+    private void removeUnlocked(Integer id) {
+        String previous = texts.remove(id);
+        if (previous == null) {
+            return;
+        }
+        for (String word : words(previous)) {
+            Set<Integer> ids = postings.get(word);
+            if (ids != null) {
+                ids.remove(id);
+            }
+        }
+    }
+
+    private static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static Set<String> words(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static String normalize(String text) {
+        return text.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,121 @@
+package com.freshplanner.api.utility;
+
+import java.util.Arrays;
+
+/**
+ * <h2>Int Float Map</h2>
+ * Open-addressing hash map from int keys to summed float values, without boxing.
+ * <ul>
+ *     <li>Linear probing on a power-of-two table, resized at a load factor of 0.5.</li>
+ *     <li>Values only get added, there is no removal.</li>
+ *     <li>Not thread-safe: parallel reductions use one map per thread and {@link #addAll(IntFloatMap)}.</li>
+ * </ul>
+ */
+public class IntFloatMap {
+
+    private int[] keys;
+    private float[] values;
+    private boolean[] used;
+    private int size;
+
+    public IntFloatMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize number of keys that fit without resizing
+     */
+    public IntFloatMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, expectedSize) * 2 - 1) << 1;
+        this.keys = new int[capacity];
+        this.values = new float[capacity];
+        this.used = new boolean[capacity];
+    }
+
+    /**
+     * @param key   map key
+     * @param delta value to add, a missing key starts with 0
+     */
+    public void add(int key, float delta) {
+        int slot = slot(key);
+        if (!used[slot]) {
+            used[slot] = true;
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                values[slot] = delta;
+                resize();
+                return;
+            }
+        }
+        values[slot] += delta;
+    }
+
+    /**
+     * @param other map whose values get added to this one
+     */
+    public void addAll(IntFloatMap other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.used[i]) {
+                add(other.keys[i], other.values[i]);
+            }
+        }
+    }
+
+    /**
+     * @param key          map key
+     * @param defaultValue result for a missing key
+     * @return value of the key
+     */
+    public float getOrDefault(int key, float defaultValue) {
+        int slot = slot(key);
+        return used[slot] ? values[slot] : defaultValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return all keys in ascending order
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                result[count++] = keys[i];
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    // === INTERNAL ====================================================================================================
+
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int hash = key * 0x9E3779B9;
+        int slot = (hash ^ hash >>> 16) & mask;
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        float[] oldValues = values;
+        boolean[] oldUsed = used;
+        keys = new int[oldKeys.length * 2];
+        values = new float[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slot(oldKeys[i]);
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
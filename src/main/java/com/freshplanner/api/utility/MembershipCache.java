@@ -0,0 +1,106 @@
+package com.freshplanner.api.utility;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * <h2>Membership Cache</h2>
+ * In-memory access control list from usernames to the ids of the containers (storages, carts) they are members of,
+ * so access can be decided before any entity gets loaded.
+ * <ul>
+ *     <li>The ids of a user get loaded with one query on the first check and kept for the TTL.</li>
+ *     <li>Membership changes invalidate the affected users after the commit; the TTL bounds the staleness
+ *     caused by other nodes.</li>
+ *     <li>A load that overlaps with an invalidation is not kept, so old memberships can not be cached again.</li>
+ * </ul>
+ */
+public class MembershipCache {
+
+    private final long ttlMillis;
+    private final Function<String, Collection<Integer>> loader;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param ttlMillis time to live of the loaded ids
+     * @param loader    query for the container ids of a username
+     */
+    public MembershipCache(long ttlMillis, Function<String, Collection<Integer>> loader) {
+        this.ttlMillis = ttlMillis;
+        this.loader = loader;
+    }
+
+    /**
+     * @param username    user to check
+     * @param containerId database id of the container
+     * @return true if the user is a member of the container
+     */
+    public boolean isMember(String username, Integer containerId) {
+        if (username == null || containerId == null) {
+            return false;
+        }
+        String key = normalize(username);
+        Entry entry = entries.get(key);
+        if (entry == null || entry.expiresAt < System.currentTimeMillis()) {
+            long invalidationsBefore = invalidations.get();
+            entry = new Entry(new HashSet<>(loader.apply(username)), System.currentTimeMillis() + ttlMillis);
+            entries.put(key, entry);
+            if (invalidations.get() != invalidationsBefore) {
+                entries.remove(key, entry);
+            }
+        }
+        return entry.containerIds.contains(containerId);
+    }
+
+    /**
+     * Drops the cached ids of the users (after the commit of the current transaction).
+     *
+     * @param usernames users whose memberships changed
+     */
+    public void invalidate(Collection<String> usernames) {
+        List<String> keys = new ArrayList<>();
+        usernames.forEach(username -> keys.add(normalize(username)));
+        invalidateNow(keys);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidateNow(keys);
+                }
+            });
+        }
+    }
+
+    /**
+     * @param username user whose memberships changed
+     */
+    public void invalidate(String username) {
+        invalidate(Collections.singletonList(username));
+    }
+
+    // === INTERNAL ====================================================================================================
+
+    private void invalidateNow(List<String> keys) {
+        invalidations.incrementAndGet();
+        keys.forEach(entries::remove);
+    }
+
+    private static String normalize(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    private static class Entry {
+        private final Set<Integer> containerIds;
+        private final long expiresAt;
+
+        private Entry(Set<Integer> containerIds, long expiresAt) {
+            this.containerIds = containerIds;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
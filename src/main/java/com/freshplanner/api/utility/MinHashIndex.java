@@ -0,0 +1,192 @@
+package com.freshplanner.api.utility;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <h2>MinHash Index</h2>
+ * Locality-sensitive hashing over int sets, to find the elements with the most similar sets (Jaccard)
+ * without comparing all pairs.
+ * <ul>
+ *     <li>Every set gets a MinHash signature of {@value #HASHES} values (seeded murmur3 finalizers).</li>
+ *     <li>The signature is split into {@value #BANDS} bands of {@value #ROWS} rows, every band is a bucket key.</li>
+ *     <li>Only elements that share at least one bucket are candidates, they get ranked by their exact Jaccard
+ *     similarity.</li>
+ * </ul>
+ * With 16 x 4 a pair with a similarity of 0.5 becomes a candidate with a probability of about 0.65,
+ * one with 0.8 with more than 0.99.
+ */
+public class MinHashIndex {
+
+    private static final int BANDS = 16;
+    private static final int ROWS = 4;
+    private static final int HASHES = BANDS * ROWS;
+    private static final int[] SEEDS = new Random(0x5EED).ints(HASHES).toArray();
+
+    private final Map<Long, Set<Integer>> buckets = new HashMap<>();
+    private final Map<Integer, int[]> setOf = new HashMap<>();
+    private final Map<Integer, long[]> bucketsOf = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds or replaces the set of the element.
+     *
+     * @param id   element id
+     * @param keys contained keys
+     */
+    public void put(Integer id, Collection<Integer> keys) {
+        int[] set = keys.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+        long[] bucketKeys = set.length > 0 ? bucketKeys(signature(set)) : new long[0];
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+            setOf.put(id, set);
+            bucketsOf.put(id, bucketKeys);
+            for (long bucketKey : bucketKeys) {
+                buckets.computeIfAbsent(bucketKey, key -> new HashSet<>()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param id element id
+     */
+    public void remove(Integer id) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all elements.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            buckets.clear();
+            setOf.clear();
+            bucketsOf.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param id element id
+     * @return true if the element is in the index
+     */
+    public boolean contains(Integer id) {
+        lock.readLock().lock();
+        try {
+            return setOf.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param id    element id
+     * @param limit maximum number of results
+     * @return Jaccard similarity per id of the most similar other elements, most similar first (ties by id)
+     */
+    public Map<Integer, Float> similar(Integer id, int limit) {
+        lock.readLock().lock();
+        try {
+            int[] set = setOf.get(id);
+            if (set == null || set.length == 0) {
+                return Collections.emptyMap();
+            }
+            Set<Integer> candidates = new HashSet<>();
+            for (long bucketKey : bucketsOf.get(id)) {
+                candidates.addAll(buckets.get(bucketKey));
+            }
+            candidates.remove(id);
+
+            List<Map.Entry<Integer, Float>> scored = new ArrayList<>(candidates.size());
+            for (Integer candidate : candidates) {
+                scored.add(new AbstractMap.SimpleImmutableEntry<>(candidate, jaccard(set, setOf.get(candidate))));
+            }
+            scored.sort(Map.Entry.<Integer, Float>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+            Map<Integer, Float> result = new LinkedHashMap<>();
+            for (Map.Entry<Integer, Float> entry : scored.subList(0, Math.min(limit, scored.size()))) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // === INTERNAL ====================================================================================================
+
+    private void removeUnlocked(Integer id) {
+        setOf.remove(id);
+        long[] bucketKeys = bucketsOf.remove(id);
+        if (bucketKeys == null) {
+            return;
+        }
+        for (long bucketKey : bucketKeys) {
+            Set<Integer> bucket = buckets.get(bucketKey);
+            if (bucket != null && bucket.remove(id) && bucket.isEmpty()) {
+                buckets.remove(bucketKey);
+            }
+        }
+    }
+
+    private static int[] signature(int[] set) {
+        int[] signature = new int[HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int key : set) {
+            for (int i = 0; i < HASHES; i++) {
+                signature[i] = Math.min(signature[i], mix(key ^ SEEDS[i]));
+            }
+        }
+        return signature;
+    }
+
+    private static long[] bucketKeys(int[] signature) {
+        long[] keys = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            int hash = 1;
+            for (int row = 0; row < ROWS; row++) {
+                hash = 31 * hash + signature[band * ROWS + row];
+            }
+            keys[band] = ((long) band << 32) | (mix(hash) & 0xffffffffL);
+        }
+        return keys;
+    }
+
+    /**
+     * murmur3 32-bit finalizer
+     */
+    private static int mix(int value) {
+        value ^= value >>> 16;
+        value *= 0x85ebca6b;
+        value ^= value >>> 13;
+        value *= 0xc2b2ae35;
+        value ^= value >>> 16;
+        return value;
+    }
+
+    private static float jaccard(int[] a, int[] b) {
+        int common = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (float) common / (a.length + b.length - common);
+    }
+}
@@ -0,0 +1,209 @@
+package com.freshplanner.api.utility;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <h2>Posting Index</h2>
+ * In-memory inverted index from int keys to the ids of the elements that contain them.
+ * <ul>
+ *     <li>Every posting list is a sorted int[] without duplicates.</li>
+ *     <li>AND queries intersect the lists starting with the shortest one, using binary search into the longer ones.</li>
+ *     <li>OR queries merge the lists.</li>
+ * </ul>
+ */
+public class PostingIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Map<Integer, int[]> postings = new HashMap<>();
+    private final Map<Integer, int[]> keysOf = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds or replaces the keys of the element.
+     *
+     * @param id   element id
+     * @param keys contained keys
+     */
+    public void put(Integer id, Collection<Integer> keys) {
+        int[] sortedKeys = keys.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+            for (int key : sortedKeys) {
+                postings.put(key, insert(postings.getOrDefault(key, EMPTY), id));
+            }
+            keysOf.put(id, sortedKeys);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param id element id
+     */
+    public void remove(Integer id) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all elements.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            keysOf.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param keys  required keys
+     * @param after smallest id - 1 of the result
+     * @param limit maximum number of results
+     * @return ascending ids of the elements with all keys
+     */
+    public int[] all(Collection<Integer> keys, int after, int limit) {
+        if (keys.isEmpty()) {
+            return EMPTY;
+        }
+        lock.readLock().lock();
+        try {
+            List<int[]> lists = new ArrayList<>();
+            for (Integer key : new HashSet<>(keys)) {
+                int[] list = postings.get(key);
+                if (list == null) {
+                    return EMPTY;
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.length));
+            int[] smallest = lists.get(0);
+            int[] result = new int[Math.min(limit, smallest.length)];
+            int size = 0;
+            int[] positions = new int[lists.size()];
+            for (int i = firstAfter(smallest, after); i < smallest.length && size < limit; i++) {
+                int id = smallest[i];
+                boolean inAll = true;
+                for (int l = 1; l < lists.size() && inAll; l++) {
+                    int[] list = lists.get(l);
+                    int position = Arrays.binarySearch(list, positions[l], list.length, id);
+                    if (position >= 0) {
+                        positions[l] = position;
+                    } else {
+                        positions[l] = -position - 1;
+                        inAll = false;
+                    }
+                }
+                if (inAll) {
+                    result[size++] = id;
+                }
+            }
+            return Arrays.copyOf(result, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param keys  accepted keys
+     * @param after smallest id - 1 of the result
+     * @param limit maximum number of results
+     * @return ascending ids of the elements with at least one key
+     */
+    public int[] any(Collection<Integer> keys, int after, int limit) {
+        lock.readLock().lock();
+        try {
+            List<int[]> lists = new ArrayList<>();
+            for (Integer key : new HashSet<>(keys)) {
+                int[] list = postings.get(key);
+                if (list != null) {
+                    lists.add(list);
+                }
+            }
+            // k-way merge, the lists are short enough to pick the minimum linearly
+            int[] positions = new int[lists.size()];
+            for (int l = 0; l < lists.size(); l++) {
+                positions[l] = firstAfter(lists.get(l), after);
+            }
+            int[] result = new int[limit];
+            int size = 0;
+            int previous = after;
+            while (size < limit) {
+                int next = Integer.MAX_VALUE;
+                for (int l = 0; l < lists.size(); l++) {
+                    int[] list = lists.get(l);
+                    while (positions[l] < list.length && list[positions[l]] <= previous) {
+                        positions[l]++;
+                    }
+                    if (positions[l] < list.length) {
+                        next = Math.min(next, list[positions[l]]);
+                    }
+                }
+                if (next == Integer.MAX_VALUE) {
+                    break;
+                }
+                result[size++] = next;
+                previous = next;
+            }
+            return Arrays.copyOf(result, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // === INTERNAL ====================================================================================================
+
+    private void removeUnlocked(Integer id) {
+        int[] keys = keysOf.remove(id);
+        if (keys == null) {
+            return;
+        }
+        for (int key : keys) {
+            int[] list = delete(postings.getOrDefault(key, EMPTY), id);
+            if (list.length == 0) {
+                postings.remove(key);
+            } else {
+                postings.put(key, list);
+            }
+        }
+    }
+
+    private static int firstAfter(int[] list, int after) {
+        int position = Arrays.binarySearch(list, after);
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+
+    private static int[] insert(int[] list, int id) {
+        int position = Arrays.binarySearch(list, id);
+        if (position >= 0) {
+            return list;
+        }
+        position = -position - 1;
+        int[] result = new int[list.length + 1];
+        System.arraycopy(list, 0, result, 0, position);
+        result[position] = id;
+        System.arraycopy(list, position, result, position + 1, list.length - position);
+        return result;
+    }
+
+    private static int[] delete(int[] list, int id) {
+        int position = Arrays.binarySearch(list, id);
+        if (position < 0) {
+            return list;
+        }
+        int[] result = new int[list.length - 1];
+        System.arraycopy(list, 0, result, 0, position);
+        System.arraycopy(list, position + 1, result, position, list.length - position - 1);
+        return result;
+    }
+}
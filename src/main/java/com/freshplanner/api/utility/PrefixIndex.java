@@ -0,0 +1,78 @@
+package com.freshplanner.api.utility;
+
+import com.freshplanner.api.controller.model.Suggestion;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * <h2>Prefix Index</h2>
+ * Sorted in-memory index of element names for case-insensitive autocomplete.
+ * A prefix lookup is a binary search to the first matching key followed by an ordered scan of the next k entries.
+ */
+public class PrefixIndex {
+
+    private static final char SEPARATOR = '\u0000';
+    private static final char MAX_CHAR = '\uffff';
+
+    private final ConcurrentNavigableMap<String, Suggestion> entries = new ConcurrentSkipListMap<>();
+    private final Map<Integer, String> keys = new ConcurrentHashMap<>();
+
+    /**
+     * Adds or replaces the name of the element.
+     *
+     * @param id   element id
+     * @param name element name, null removes the element
+     */
+    public synchronized void put(Integer id, String name) {
+        remove(id);
+        if (name == null) {
+            return;
+        }
+        // the id keeps keys unique if two names only differ in case
+        String key = normalize(name) + SEPARATOR + id;
+        entries.put(key, new Suggestion(id, name));
+        keys.put(id, key);
+    }
+
+    /**
+     * @param id element id
+     */
+    public synchronized void remove(Integer id) {
+        String key = keys.remove(id);
+        if (key != null) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Removes all elements.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        keys.clear();
+    }
+
+    /**
+     * @param prefix start of the name (case-insensitive)
+     * @param limit  maximum number of results
+     * @return matching elements in alphabetical order
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        List<Suggestion> result = new ArrayList<>(Math.min(limit, 64));
+        for (Suggestion suggestion : entries.subMap(normalized, normalized + MAX_CHAR).values()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(suggestion);
+        }
+        return result;
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
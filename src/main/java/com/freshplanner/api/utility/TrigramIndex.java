@@ -0,0 +1,154 @@
+package com.freshplanner.api.utility;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <h2>Trigram Index</h2>
+ * In-memory inverted index from character trigrams to element ids for case-insensitive substring search.
+ * <ul>
+ *     <li>Queries with at least three characters intersect the posting lists of their trigrams.</li>
+ *     <li>Shorter queries scan the indexed texts in memory.</li>
+ *     <li>Every candidate gets verified with {@link String#contains} and ranked: exact, prefix, word start, infix.</li>
+ * </ul>
+ */
+public class TrigramIndex {
+
+    private static final int GRAM = 3;
+
+    private final Map<String, Set<Integer>> postings = new HashMap<>();
+    private final Map<Integer, String> texts = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds or replaces the text of the element.
+     *
+     * @param id   element id
+     * @param text searchable text, null removes the element
+     */
+    public void put(Integer id, String text) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+            if (text == null) {
+                return;
+            }
+            String normalized = normalize(text);
+            texts.put(id, normalized);
+            for (String gram : grams(normalized)) {
+                postings.computeIfAbsent(gram, key -> new HashSet<>()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param id element id
+     */
+    public void remove(Integer id) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all elements.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            texts.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param query partial text (case-insensitive)
+     * @param limit maximum number of results
+     * @return ids of the matching elements, best match first
+     */
+    public List<Integer> search(String query, int limit) {
+        String normalized = normalize(query);
+        lock.readLock().lock();
+        try {
+            Collection<Integer> candidates = candidates(normalized);
+            List<Integer> result = new ArrayList<>();
+            for (Integer id : candidates) {
+                if (texts.get(id).contains(normalized)) {
+                    result.add(id);
+                }
+            }
+            result.sort(Comparator
+                    .comparingInt((Integer id) -> rank(texts.get(id), normalized))
+                    .thenComparingInt(id -> texts.get(id).length())
+                    .thenComparing(id -> id));
+            return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // === INTERNAL ====================================================================================================
+
+    private Collection<Integer> candidates(String query) {
+        if (query.length() < GRAM) {
+            return texts.keySet();
+        }
+        List<Set<Integer>> lists = new ArrayList<>();
+        for (String gram : grams(query)) {
+            Set<Integer> list = postings.get(gram);
+            if (list == null) {
+                return Collections.emptyList();
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<Integer> result = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.retainAll(lists.get(i));
+        }
+        return result;
+    }
+
+    private void removeUnlocked(Integer id) {
+        String previous = texts.remove(id);
+        if (previous == null) {
+            return;
+        }
+        for (String gram : grams(previous)) {
+            Set<Integer> list = postings.get(gram);
+            if (list != null) {
+                list.remove(id);
+                if (list.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static int rank(String text, String query) {
+        if (text.equals(query)) return 0;
+        if (text.startsWith(query)) return 1;
+        if (text.contains(" " + query)) return 2;
+        return 3;
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    private static String normalize(String text) {
+        return text.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -62,3 +62,6 @@ VALUES (1, 4, 1, 'A big one.'),
        (3, 9, 1, null),
        (4, 8, 75, null),
        (4, 10, 100, null);
+
+INSERT IGNORE INTO catalog_marker (id, version)
+    VALUE (1, 0);
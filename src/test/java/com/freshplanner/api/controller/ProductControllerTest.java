@@ -13,6 +13,7 @@ import utility.TestLogger;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static utility.AssertionUtils.*;
 
@@ -59,6 +60,41 @@ class ProductControllerTest extends ControllerTest {
 
     @Test
     @Order(3)
+    void getAllProductsNotModified() throws Exception {
+        MvcResult result = mockMvc.perform(
+                        get("/product")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .characterEncoding("UTF-8"))
+                .andExpect(status().isOk())
+                .andReturn();
+        String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(eTag);
+
+        mockMvc.perform(
+                        get("/product")
+                                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .characterEncoding("UTF-8"))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    @Order(4)
+    void exportProducts() throws Exception {
+        MvcResult result = mockMvc.perform(
+                        get("/product/export")
+                                .characterEncoding("UTF-8"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String content = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertTrue(content.contains("\"name\":\"" + productExpected.getName() + "\""));
+    }
+
+    @Test
+    @Order(5)
     void getProductById() throws Exception {
         mockMvc.perform(
                         get("/product/get/" + productExpected.getId())
@@ -69,7 +105,7 @@ class ProductControllerTest extends ControllerTest {
     }
 
     @Test
-    @Order(4)
+    @Order(6)
     void searchProductsByName() throws Exception {
         mockMvc.perform(
                         get("/product/search-name?name=" + productExpected.getName().substring(2))
@@ -80,7 +116,19 @@ class ProductControllerTest extends ControllerTest {
     }
 
     @Test
-    @Order(5)
+    @Order(7)
+    void searchProductsByNameFuzzy() throws Exception {
+        String misspelled = productExpected.getName().substring(0, 2) + productExpected.getName().substring(3);
+        mockMvc.perform(
+                        get("/product/search-fuzzy?name=" + misspelled)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .characterEncoding("UTF-8"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    @Order(8)
     void searchProductsByCategory() throws Exception {
         mockMvc.perform(
                         get("/product/search-category?category=" + productExpected.getCategory().substring(2))
@@ -91,7 +139,18 @@ class ProductControllerTest extends ControllerTest {
     }
 
     @Test
-    @Order(6)
+    @Order(9)
+    void suggestProducts() throws Exception {
+        mockMvc.perform(
+                        get("/product/suggest?prefix=" + productExpected.getName().substring(0, 4))
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .characterEncoding("UTF-8"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    @Order(10)
     void getCategories() throws Exception {
         mockMvc.perform(
                         get("/product/categories")
@@ -102,7 +161,27 @@ class ProductControllerTest extends ControllerTest {
     }
 
     @Test
-    @Order(7)
+    @Order(11)
+    void getCategoriesNotModified() throws Exception {
+        MvcResult result = mockMvc.perform(
+                        get("/product/categories")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .characterEncoding("UTF-8"))
+                .andExpect(status().isOk())
+                .andReturn();
+        String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(eTag);
+
+        mockMvc.perform(
+                        get("/product/categories")
+                                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .characterEncoding("UTF-8"))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    @Order(12)
     void getUnits() throws Exception {
         mockMvc.perform(
                         get("/product/units")
@@ -113,7 +192,7 @@ class ProductControllerTest extends ControllerTest {
     }
 
     @Test
-    @Order(8)
+    @Order(13)
     void updateProduct() throws Exception {
         Product productModel = DataFactory.Product.productModelV2(productExpected.getId());
         TestLogger.info("Model for operation: " + productModel);
@@ -145,7 +224,7 @@ class ProductControllerTest extends ControllerTest {
     }
 
     @Test
-    @Order(9)
+    @Order(14)
     void deleteProduct() throws Exception {
         mockMvc.perform(
                         delete("/product/delete/" + productExpected.getId())
@@ -0,0 +1,151 @@
+package com.freshplanner.api.service.cart;
+
+import com.freshplanner.api.controller.model.Cart;
+import com.freshplanner.api.controller.model.Product;
+import com.freshplanner.api.controller.model.Recipe;
+import com.freshplanner.api.exception.ElementNotFoundException;
+import com.freshplanner.api.exception.NoAccessException;
+import com.freshplanner.api.service.product.ProductDB;
+import com.freshplanner.api.service.product.ProductEntity;
+import com.freshplanner.api.service.recipe.RecipeDB;
+import com.freshplanner.api.service.recipe.RecipeEntity;
+import environment.ApplicationTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import utility.DataFactory;
+import utility.TestLogger;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CartDBTest extends ApplicationTest {
+
+    @Autowired
+    private ProductDB productDB;
+
+    @Autowired
+    private RecipeDB recipeDB;
+
+    @Autowired
+    private CartDB cartDB;
+
+    private ProductEntity productExpected;
+    private RecipeEntity recipeExpected;
+    private CartEntity cartExpected;
+
+    @BeforeAll
+    void beforeAll() throws ElementNotFoundException {
+        Product productModel = DataFactory.Product.productModelV1(null);
+        productExpected = productDB.insertProduct(productModel);
+        assertNotNull(productExpected.getId());
+        TestLogger.info("Inserted product: " + productExpected);
+
+        Recipe recipeModel = DataFactory.Recipe.recipeModelV1(null);
+        recipeModel.setName(recipeModel.getName() + "Cart");
+        recipeModel.setItems(List.of(DataFactory.Recipe.recipeItemV2(productExpected.getId())));
+        recipeExpected = recipeDB.insertRecipe(recipeModel);
+        assertNotNull(recipeExpected.getId());
+        TestLogger.info("Inserted recipe: " + recipeExpected);
+    }
+
+    @Test
+    @Order(1)
+    void insertCart() throws ElementNotFoundException, NoAccessException {
+        Cart cartModel = DataFactory.Cart.cartModelV1(null);
+        TestLogger.info("Model for operation: " + cartModel);
+
+        CartEntity cartActual = cartDB.insertCart(user.getName(), cartModel);
+        assertNotNull(cartActual.getId());
+        cartActual = cartDB.insertCartItem(user.getName(), cartActual.getId(), DataFactory.Cart.cartItemV1(productExpected.getId()));
+        assertEquals(1, cartActual.getCartItems().size());
+
+        cartExpected = cartActual;
+        TestLogger.info("Inserted cart: " + cartExpected);
+    }
+
+    @Test
+    @Order(2)
+    void insertRecipeItems() throws ElementNotFoundException, NoAccessException {
+        Integer cartId = cartExpected.getId();
+
+        // merged into the existing item: 1 + 2 (recipe) * 3 (servings)
+        CartEntity cartActual = cartDB.insertRecipeItems(user.getName(), cartId, recipeExpected.getId(), 3);
+        assertEquals(1, cartActual.getCartItems().size());
+        assertEquals(7f, cartActual.mapToModel().getItems().get(0).getCount());
+
+        assertThrows(IllegalArgumentException.class, () -> cartDB.insertRecipeItems(user.getName(), cartId, recipeExpected.getId(), 0));
+        assertThrows(ElementNotFoundException.class, () -> cartDB.insertRecipeItems(user.getName(), cartId, -1, 1));
+        assertThrows(NoAccessException.class, () -> cartDB.insertRecipeItems(user.getName() + "Other", cartId, recipeExpected.getId(), 1));
+    }
+
+    @Test
+    @Order(3)
+    void updateCartItemCount() throws ElementNotFoundException, NoAccessException {
+        Integer cartId = cartExpected.getId();
+        Integer productId = productExpected.getId();
+
+        assertEquals(9f, cartDB.updateCartItemCount(user.getName(), cartId, productId, 2f).getCount());
+        assertEquals(0f, cartDB.updateCartItemCount(user.getName(), cartId, productId, -100f).getCount());
+
+        assertThrows(IllegalArgumentException.class, () -> cartDB.updateCartItemCount(user.getName(), cartId, productId, Float.NaN));
+        assertThrows(ElementNotFoundException.class, () -> cartDB.updateCartItemCount(user.getName(), cartId, -1, 1f));
+        // no item of 'Penne' (data.sql) in the cart: a negative delta must not insert one
+        assertThrows(ElementNotFoundException.class, () -> cartDB.updateCartItemCount(user.getName(), cartId, 1, -1f));
+        assertThrows(NoAccessException.class, () -> cartDB.updateCartItemCount(user.getName() + "Other", cartId, productId, 1f));
+    }
+
+    @Test
+    @Order(4)
+    void upsertCartItems() throws ElementNotFoundException, NoAccessException {
+        Integer cartId = cartExpected.getId();
+        Cart.Item item = DataFactory.Cart.cartItemV1(productExpected.getId());
+        item.setCount(5f);
+
+        CartEntity cartActual = cartDB.upsertCartItems(user.getName(), cartId, List.of(item));
+        assertEquals(1, cartActual.getCartItems().size());
+        assertEquals(5f, cartActual.mapToModel().getItems().get(0).getCount());
+
+        assertThrows(IllegalArgumentException.class, () -> cartDB.upsertCartItems(user.getName(), cartId, List.of(item, item)));
+        assertThrows(ElementNotFoundException.class, () -> cartDB.upsertCartItems(user.getName(), cartId,
+                List.of(DataFactory.Cart.cartItemV1(-1))));
+        assertThrows(NoAccessException.class, () -> cartDB.upsertCartItems(user.getName() + "Other", cartId, List.of(item)));
+    }
+
+    @Test
+    @Order(5)
+    void updateCartVersionConflict() throws ElementNotFoundException, NoAccessException {
+        Cart cartModel = cartDB.selectCartById(user.getName(), cartExpected.getId()).mapToModel();
+        cartModel.setName(cartModel.getName() + "Updated");
+        Cart cartUpdated = cartDB.updateCart(user.getName(), cartModel).mapToModel();
+        assertEquals(cartModel.getVersion() + 1, cartUpdated.getVersion());
+        // same name, the version moves anyway
+        assertEquals(cartUpdated.getVersion() + 1, cartDB.updateCart(user.getName(), cartUpdated).getVersion());
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> cartDB.updateCart(user.getName(), cartModel));
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> cartDB.updateCart(user.getName(), cartUpdated));
+    }
+
+    @Test
+    @Order(6)
+    void deleteCart() throws ElementNotFoundException, NoAccessException {
+        CartEntity cartActual = cartDB.deleteCartById(user.getName(), cartExpected.getId());
+        assertEquals(cartExpected.getId(), cartActual.getId());
+        TestLogger.info("Deleted cart: " + cartActual);
+    }
+
+    @AfterAll
+    void afterAll() throws ElementNotFoundException {
+        RecipeEntity recipeActual = recipeDB.deleteRecipeById(recipeExpected.getId());
+        assertEquals(recipeExpected.getId(), recipeActual.getId());
+        TestLogger.info("Deleted recipe: " + recipeActual);
+
+        ProductEntity productActual = productDB.deleteProductById(productExpected.getId());
+        assertEquals(productExpected.getId(), productActual.getId());
+        TestLogger.info("Deleted product: " + productActual);
+    }
+}
@@ -0,0 +1,53 @@
+package com.freshplanner.api.service.catalog;
+
+import com.freshplanner.api.controller.model.Product;
+import com.freshplanner.api.exception.ElementNotFoundException;
+import com.freshplanner.api.service.product.ProductDB;
+import com.freshplanner.api.service.product.ProductEntity;
+import environment.ApplicationTest;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import utility.DataFactory;
+import utility.TestLogger;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static utility.AssertionUtils.*;
+
+class CatalogSnapshotTest extends ApplicationTest {
+
+    @Autowired
+    private ProductDB productDB;
+
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
+
+    private ProductEntity productExpected;
+
+    @Test
+    @Order(1)
+    void writeAndLoadSnapshot() {
+        Product productModel = DataFactory.Product.productModelV1(null);
+        productExpected = productDB.insertProduct(productModel);
+        TestLogger.info("Inserted product: " + productExpected);
+
+        catalogSnapshot.write();
+
+        Optional<List<Product>> products = catalogSnapshot.loadProducts();
+        assertTrue(products.isPresent());
+        assertContains(products.get().stream().map(Product::getName).collect(Collectors.toList()), productModel.getName());
+        assertTrue(catalogSnapshot.loadRecipes().isPresent());
+    }
+
+    @Test
+    @Order(2)
+    void outdatedSnapshot() throws ElementNotFoundException {
+        productDB.deleteProductById(productExpected.getId());
+        TestLogger.info("Deleted product: " + productExpected);
+
+        assertFalse(catalogSnapshot.loadProducts().isPresent());
+    }
+}
@@ -0,0 +1,49 @@
+package com.freshplanner.api.service.catalog;
+
+import com.freshplanner.api.service.product.ProductDB;
+import environment.ApplicationTest;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import utility.TestLogger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogVersionTest extends ApplicationTest {
+
+    @Autowired
+    private ProductDB productDB;
+
+    @Autowired
+    private CatalogVersion catalogVersion;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.settings.catalog.version.refresh-ms}")
+    private long refreshMillis;
+
+    @Test
+    @Order(1)
+    void versionFollowsMarker() {
+        long versionBefore = productDB.selectCatalogVersion();
+        assertEquals(catalogVersion.selectMarker(), versionBefore);
+    }
+
+    @Test
+    @Order(2)
+    void markerChangedByOtherNode() throws InterruptedException {
+        long versionBefore = productDB.selectCatalogVersion();
+
+        // a write of another node only shows up in the persisted marker
+        jdbcTemplate.update("update catalog_marker set version = version + 1 where id = 1");
+        Thread.sleep(refreshMillis + 100);
+
+        long versionAfter = productDB.selectCatalogVersion();
+        TestLogger.info("Catalog version: " + versionBefore + " -> " + versionAfter);
+        assertTrue(versionAfter > versionBefore);
+        assertEquals(catalogVersion.selectMarker(), versionAfter);
+    }
+}
@@ -0,0 +1,155 @@
+package com.freshplanner.api.service.planner;
+
+import com.freshplanner.api.controller.model.MealPlan;
+import com.freshplanner.api.controller.model.PlannedIngredient;
+import com.freshplanner.api.controller.model.Product;
+import com.freshplanner.api.controller.model.Recipe;
+import com.freshplanner.api.exception.ElementNotFoundException;
+import com.freshplanner.api.service.product.ProductDB;
+import com.freshplanner.api.service.product.ProductEntity;
+import com.freshplanner.api.service.recipe.RecipeDB;
+import com.freshplanner.api.service.recipe.RecipeEntity;
+import com.freshplanner.api.utility.IntFloatMap;
+import environment.ApplicationTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import utility.DataFactory;
+import utility.TestLogger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlannerDBTest extends ApplicationTest {
+
+    @Autowired
+    private ProductDB productDB;
+
+    @Autowired
+    private RecipeDB recipeDB;
+
+    @Autowired
+    private PlannerDB plannerDB;
+
+    private ProductEntity productExpected;
+    private final List<RecipeEntity> recipesExpected = new ArrayList<>();
+
+    @BeforeAll
+    void beforeAll() throws ElementNotFoundException {
+        Product productModel = DataFactory.Product.productModelV1(null);
+        productExpected = productDB.insertProduct(productModel);
+        assertNotNull(productExpected.getId());
+        TestLogger.info("Inserted product: " + productExpected);
+
+        // recipe 0: 2 x product, 1 x 'Penne' (data.sql), recipe 1: 1 x product
+        Recipe recipeModel = DataFactory.Recipe.recipeModelV1(null);
+        recipeModel.setName(recipeModel.getName() + "Planner");
+        recipeModel.setItems(List.of(DataFactory.Recipe.recipeItemV2(productExpected.getId()), DataFactory.Recipe.recipeItemV1(1)));
+        recipesExpected.add(recipeDB.insertRecipe(recipeModel));
+
+        recipeModel = DataFactory.Recipe.recipeModelV1(null);
+        recipeModel.setName(recipeModel.getName() + "PlannerOther");
+        recipeModel.setItems(List.of(DataFactory.Recipe.recipeItemV1(productExpected.getId())));
+        recipesExpected.add(recipeDB.insertRecipe(recipeModel));
+        TestLogger.info("Inserted recipes: " + recipesExpected);
+    }
+
+    @Test
+    @Order(1)
+    void selectPlanIngredients() throws ElementNotFoundException {
+        MealPlan mealPlan = new MealPlan(List.of(
+                new MealPlan.Entry(recipesExpected.get(0).getId(), 2),
+                new MealPlan.Entry(recipesExpected.get(1).getId(), 3)));
+
+        Map<Integer, PlannedIngredient> result = plannerDB.selectPlanIngredients(mealPlan, Map.of(productExpected.getId(), 5f))
+                .stream().collect(Collectors.toMap(PlannedIngredient::getProductId, Function.identity()));
+        assertEquals(2, result.size());
+
+        // summed over both recipes: 2 * 2 + 1 * 3
+        PlannedIngredient product = result.get(productExpected.getId());
+        assertEquals(7f, product.getCount());
+        assertEquals(5f, product.getAvailable());
+        assertEquals(2f, product.getMissing());
+
+        PlannedIngredient penne = result.get(1);
+        assertEquals(2f, penne.getCount());
+        assertEquals(0f, penne.getAvailable());
+        assertEquals(2f, penne.getMissing());
+
+        // without a storage nothing gets compared
+        plannerDB.selectPlanIngredients(mealPlan, null).forEach(ingredient -> {
+            assertNull(ingredient.getAvailable());
+            assertNull(ingredient.getMissing());
+        });
+
+        // one serving by default, the request stays as it is
+        MealPlan.Entry entry = new MealPlan.Entry(recipesExpected.get(1).getId(), null);
+        List<PlannedIngredient> single = plannerDB.selectPlanIngredients(new MealPlan(List.of(entry)), null);
+        assertEquals(1f, single.get(0).getCount());
+        assertNull(entry.getServings());
+    }
+
+    @Test
+    @Order(2)
+    void selectPlanIngredientsInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> plannerDB.selectPlanIngredients(new MealPlan(new ArrayList<>()), null));
+        assertThrows(IllegalArgumentException.class, () -> plannerDB.selectPlanIngredients(new MealPlan(List.of(
+                new MealPlan.Entry(recipesExpected.get(0).getId(), 0))), null));
+        assertThrows(ElementNotFoundException.class, () -> plannerDB.selectPlanIngredients(new MealPlan(List.of(
+                new MealPlan.Entry(-1, 1))), null));
+    }
+
+    @Test
+    @Order(3)
+    void aggregateParallelWithResize() {
+        // 1000 products (far beyond the initial capacity of the map) in 100 entries (parallel path)
+        Map<Integer, Map<Integer, Float>> ingredients = new HashMap<>();
+        for (int recipeId = 0; recipeId < 10; recipeId++) {
+            Map<Integer, Float> items = new HashMap<>();
+            for (int productId = recipeId * 100; productId < recipeId * 100 + 100; productId++) {
+                items.put(productId, 1f);
+                items.put(productId + 1, 2f);
+            }
+            ingredients.put(recipeId, items);
+        }
+        List<MealPlan.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            entries.add(new MealPlan.Entry(i % 10, i % 3 + 1));
+        }
+
+        Map<Integer, Float> expected = new HashMap<>();
+        for (MealPlan.Entry entry : entries) {
+            ingredients.get(entry.getRecipeId()).forEach((productId, count) ->
+                    expected.merge(productId, count * entry.getServings(), Float::sum));
+        }
+
+        IntFloatMap sequential = PlannerDB.aggregate(entries.subList(0, 10), ingredients);
+        assertEquals(1001, sequential.size());
+
+        IntFloatMap totals = PlannerDB.aggregate(entries, ingredients);
+        assertEquals(expected.size(), totals.size());
+        expected.forEach((productId, count) -> assertEquals(count, totals.getOrDefault(productId, -1f), 0.001f));
+        assertEquals(-1f, totals.getOrDefault(-5, -1f));
+    }
+
+    @AfterAll
+    void afterAll() throws ElementNotFoundException {
+        for (RecipeEntity recipe : recipesExpected) {
+            RecipeEntity recipeActual = recipeDB.deleteRecipeById(recipe.getId());
+            assertEquals(recipe.getId(), recipeActual.getId());
+            TestLogger.info("Deleted recipe: " + recipeActual);
+        }
+
+        ProductEntity productActual = productDB.deleteProductById(productExpected.getId());
+        assertEquals(productExpected.getId(), productActual.getId());
+        TestLogger.info("Deleted product: " + productActual);
+    }
+}
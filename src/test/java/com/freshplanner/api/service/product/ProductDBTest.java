@@ -1,14 +1,21 @@
 package com.freshplanner.api.service.product;
 
+import com.freshplanner.api.controller.model.BulkImport;
+import com.freshplanner.api.controller.model.CacheStatistics;
+import com.freshplanner.api.controller.model.NutritionStatistics;
 import com.freshplanner.api.controller.model.Product;
+import com.freshplanner.api.controller.model.ProductFilter;
+import com.freshplanner.api.enums.Nutrient;
 import com.freshplanner.api.exception.ElementNotFoundException;
 import environment.ApplicationTest;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import utility.DataFactory;
 import utility.TestLogger;
 
+import java.util.HashSet;
 import java.util.List;
 
 import static utility.AssertionUtils.*;
@@ -36,42 +43,110 @@ class ProductDBTest extends ApplicationTest {
 
     @Test
     @Order(2)
+    void insertProductsWithFailures() {
+        Product duplicate = DataFactory.Product.productModelV1(null);
+        Product invalid = DataFactory.Product.productModelV1(null);
+        invalid.setUnit(null);
+        Product tooLong = DataFactory.Product.productModelV1(null);
+        tooLong.setName("TestProduct" + "X".repeat(300));
+
+        BulkImport result = productDB.insertProducts(List.of(duplicate, invalid, tooLong).iterator());
+        assertEquals(0, result.getInserted());
+        assertEquals(3, result.getFailed());
+        assertEquals(1, result.getFailures().get(0).getRow());
+        assertEquals(2, result.getFailures().get(1).getRow());
+        assertEquals(3, result.getFailures().get(2).getRow());
+    }
+
+    @Test
+    @Order(3)
     void selectProductById() throws ElementNotFoundException {
         ProductEntity productActual = productDB.selectProductById(productExpected.getId());
         assertEquals(productExpected, productActual);
+
+        CacheStatistics statistics = productDB.selectCacheStatistics();
+        productActual = productDB.selectProductById(productExpected.getId());
+        assertEquals(productExpected, productActual);
+        assertEquals(statistics.getHits() + 1, productDB.selectCacheStatistics().getHits());
     }
 
     @Test
-    @Order(3)
+    @Order(4)
     void selectProductsByName() {
-        List<ProductEntity> result = productDB.selectProductsByName(productExpected.getName().substring(2));
+        List<ProductEntity> result = productDB.selectProductsByName(productExpected.getName().substring(2), 50);
         assertContains(result, productExpected);
     }
 
     @Test
-    @Order(4)
+    @Order(5)
+    void selectProductsByNameFuzzy() {
+        String misspelled = productExpected.getName().substring(0, 2) + productExpected.getName().substring(3);
+        List<ProductEntity> result = productDB.selectProductsByNameFuzzy(misspelled, 1, 50);
+        assertContains(result, productExpected);
+    }
+
+    @Test
+    @Order(6)
     void selectProductsByCategory() {
-        List<ProductEntity> result = productDB.selectProductsByCategory(productExpected.getCategory().substring(2));
+        List<ProductEntity> result = productDB.selectProductsByCategory(productExpected.getCategory().substring(2), 50);
         assertContains(result, productExpected);
     }
 
     @Test
-    @Order(5)
+    @Order(7)
+    void selectProductsByNutrient() {
+        List<ProductEntity> result = productDB.selectProductsByNutrient(Nutrient.PROTEIN, false,
+                productExpected.getProtein(), productExpected.getProtein(), 1000);
+        assertContains(result, productExpected);
+        result.forEach(product -> assertEquals(productExpected.getProtein(), product.getProtein()));
+
+        // the heap is bounded by the number of products, not by the limit
+        assertContains(productDB.selectProductsByNutrient(Nutrient.PROTEIN, false,
+                productExpected.getProtein(), productExpected.getProtein(), Integer.MAX_VALUE), productExpected);
+    }
+
+    @Test
+    @Order(8)
+    void selectNutritionStatistics() {
+        NutritionStatistics statistics = productDB.selectNutritionStatistics(Nutrient.KCAL);
+        assertTrue(statistics.getCount() > 0);
+        assertTrue(statistics.getMin() <= productExpected.getKcal());
+        assertTrue(statistics.getMax() >= productExpected.getKcal());
+    }
+
+    @Test
+    @Order(9)
+    void selectProductsByFilter() {
+        ProductFilter filter = new ProductFilter();
+        filter.setProteinMin(productExpected.getProtein());
+        filter.setProteinMax(productExpected.getProtein());
+        filter.setKcalMax(productExpected.getKcal());
+        filter.setCategory(productExpected.getCategory());
+        List<ProductEntity> result = productDB.selectProductsByFilter(filter, productExpected.getId() - 1, 1);
+        assertEquals(1, result.size());
+        assertEquals(productExpected, result.get(0));
+
+        filter.setKcalMax(productExpected.getKcal() - 1);
+        assertNotContains(new HashSet<>(productDB.selectProductsByFilter(filter, 0, 1000)), productExpected);
+    }
+
+    @Test
+    @Order(10)
     void selectAllProducts() {
-        List<ProductEntity> result = productDB.selectAllProducts();
+        List<ProductEntity> result = productDB.selectAllProducts(productExpected.getId() - 1, 1);
         assertContains(result, productExpected);
     }
 
 
     @Test
-    @Order(6)
+    @Order(11)
     void selectDistinctCategories() {
-        List<String> result = productDB.selectDistinctCategories();
+        List<String> result = productDB.selectDistinctCategories().getCategories();
         assertContains(result, productExpected.getCategory());
     }
 
     @Test
-    @Order(7)
+    @Order(12)
     void updateProduct() throws ElementNotFoundException {
         Product productModel = DataFactory.Product.productModelV2(productExpected.getId());
         TestLogger.info("Model for operation: " + productModel);
@@ -92,7 +167,19 @@ class ProductDBTest extends ApplicationTest {
     }
 
     @Test
-    @Order(8)
+    @Order(13)
+    void updateProductRollback() {
+        // 'Penne' exists (data.sql), the rename fails at the commit and must not reach the index
+        Product productModel = productExpected.mapToModel();
+        productModel.setName("Penne");
+
+        assertThrows(DataAccessException.class, () -> productDB.updateProduct(productModel));
+        assertTrue(productDB.selectProductsByName("Penne", 100).stream()
+                .noneMatch(product -> product.getId().equals(productExpected.getId())));
+    }
+
+    @Test
+    @Order(14)
     void deleteProductById() throws ElementNotFoundException {
         ProductEntity productActual = productDB.deleteProductById(productExpected.getId());
         assertEquals(productExpected, productActual);
@@ -102,7 +189,7 @@ class ProductDBTest extends ApplicationTest {
     }
 
     @Test
-    @Order(9)
+    @Order(15)
     void assertElementNotFound() {
         assertThrows(ElementNotFoundException.class,
                 () -> productDB.selectProductById(productExpected.getId()));
@@ -2,6 +2,10 @@ package com.freshplanner.api.service.recipe;
 
 import com.freshplanner.api.controller.model.Product;
 import com.freshplanner.api.controller.model.Recipe;
+import com.freshplanner.api.controller.model.RecipeMatch;
+import com.freshplanner.api.controller.model.RecipeSummary;
+import com.freshplanner.api.controller.model.SimilarRecipe;
+import com.freshplanner.api.enums.Match;
 import com.freshplanner.api.exception.ElementNotFoundException;
 import com.freshplanner.api.service.product.ProductDB;
 import com.freshplanner.api.service.product.ProductEntity;
@@ -14,10 +18,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import utility.DataFactory;
 import utility.TestLogger;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 import static utility.AssertionUtils.*;
 
 class RecipeDBTest extends ApplicationTest {
@@ -74,41 +83,118 @@ class RecipeDBTest extends ApplicationTest {
 
     @Test
     @Order(3)
+    void insertRecipeWithItems() throws ElementNotFoundException {
+        Recipe recipeModel = DataFactory.Recipe.recipeModelV1(null);
+        recipeModel.setName(recipeModel.getName() + "WithItems");
+        recipeModel.setItems(List.of(DataFactory.Recipe.recipeItemV1(productExpected.getId())));
+        TestLogger.info("Model for operation: " + recipeModel);
+
+        RecipeEntity recipeActual = recipeDB.insertRecipe(recipeModel);
+        assertContains(recipeActual.getRecipeItems().stream().map(RecipeItemEntity::getProductId).collect(Collectors.toSet()), productExpected.getId());
+        assertEquals(productExpected.getKcal() * recipeModel.getItems().get(0).getCount(), recipeActual.mapToModel().getKcal(), 0.01f);
+
+        recipeDB.deleteRecipeById(recipeActual.getId());
+        TestLogger.info("Deleted recipe: " + recipeActual);
+    }
+
+    @Test
+    @Order(4)
     void selectRecipeById() throws ElementNotFoundException {
         RecipeEntity recipeActual = recipeDB.selectRecipeById(recipeExpected.getId());
         assertEquals(recipeExpected, recipeActual);
     }
 
     @Test
-    @Order(4)
+    @Order(5)
     void selectRecipesByName() {
         List<RecipeEntity> result = recipeDB.selectRecipesByName(recipeExpected.getName().substring(2));
         assertContains(result, recipeExpected);
     }
 
     @Test
-    @Order(5)
+    @Order(6)
     void selectRecipesByCategory() {
         List<RecipeEntity> result = recipeDB.selectRecipesByCategory(recipeExpected.getCategory().substring(2));
         assertContains(result, recipeExpected);
     }
 
     @Test
-    @Order(6)
+    @Order(7)
     void selectAllRecipes() {
-        List<RecipeEntity> result = recipeDB.selectAllRecipes();
+        List<RecipeEntity> result = recipeDB.selectAllRecipes(recipeExpected.getId() - 1, 1);
         assertContains(result, recipeExpected);
     }
 
     @Test
-    @Order(7)
+    @Order(8)
+    void selectRecipesByProducts() {
+        List<RecipeEntity> result = recipeDB.selectRecipesByProducts(List.of(productExpected.getId()), Match.ALL, recipeExpected.getId() - 1, 1);
+        assertContains(result, recipeExpected);
+        result = recipeDB.selectRecipesByProducts(List.of(productExpected.getId(), -1), Match.ANY, recipeExpected.getId() - 1, 1);
+        assertContains(result, recipeExpected);
+        result = recipeDB.selectRecipesByProducts(List.of(productExpected.getId(), -1), Match.ALL, 0, 1000);
+        assertEquals(0, result.size());
+    }
+
+    @Test
+    @Order(9)
+    void selectRecipeSummaries() {
+        RecipeSummary expected = new RecipeSummary(recipeExpected.getId(), recipeExpected.getName(), recipeExpected.getCategory(),
+                recipeExpected.getDuration(), recipeExpected.getKcal(), recipeExpected.getCarbohydrates(),
+                recipeExpected.getProtein(), recipeExpected.getFat());
+        assertContains(recipeDB.selectRecipeSummariesByName(recipeExpected.getName().substring(2), recipeExpected.getId() - 1, 1), expected);
+        assertContains(recipeDB.selectRecipeSummariesByCategory(recipeExpected.getCategory().substring(2), recipeExpected.getId() - 1, 1), expected);
+        assertFalse(recipeDB.selectRecipeSummariesByName(recipeExpected.getName().substring(2), recipeExpected.getId(), 1).contains(expected));
+        assertContains(recipeDB.selectAllRecipeSummaries(recipeExpected.getId() - 1, 1), expected);
+        assertContains(recipeDB.selectRecipeSummariesByProducts(List.of(productExpected.getId()), Match.ALL, recipeExpected.getId() - 1, 1), expected);
+    }
+
+    @Test
+    @Order(10)
+    void selectCookableRecipes() {
+        List<RecipeMatch> result = recipeDB.selectCookableRecipes(Map.of(productExpected.getId(), 1_000_000f), 1000);
+        assertTrue(result.stream().anyMatch(match -> match.getRecipeId().equals(recipeExpected.getId())));
+        assertTrue(recipeDB.selectCookableRecipes(Map.of(-1, 1f), 1000).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> recipeDB.selectCookableRecipes(Map.of(), 0));
+    }
+
+    @Test
+    @Order(11)
+    void selectRecipeIngredients() throws ElementNotFoundException {
+        Map<Integer, Map<Integer, Float>> result = recipeDB.selectRecipeIngredients(List.of(recipeExpected.getId()));
+        assertTrue(result.get(recipeExpected.getId()).containsKey(productExpected.getId()));
+        ElementNotFoundException exception = assertThrows(ElementNotFoundException.class,
+                () -> recipeDB.selectRecipeIngredients(List.of(recipeExpected.getId(), -2, -1)));
+        assertEquals("-2, -1", exception.getId());
+    }
+
+    @Test
+    @Order(12)
+    void selectSimilarRecipes() throws ElementNotFoundException {
+        Recipe recipeModel = DataFactory.Recipe.recipeModelV1(null);
+        recipeModel.setName(recipeModel.getName() + "Similar");
+        recipeModel.setItems(List.of(DataFactory.Recipe.recipeItemV1(productExpected.getId())));
+        RecipeEntity similarRecipe = recipeDB.insertRecipe(recipeModel);
+
+        List<SimilarRecipe> result = recipeDB.selectSimilarRecipes(recipeExpected.getId(), 10);
+        assertTrue(result.stream().anyMatch(similar -> similar.getRecipeId().equals(similarRecipe.getId())));
+        assertTrue(result.stream().noneMatch(similar -> similar.getRecipeId().equals(recipeExpected.getId())));
+
+        recipeDB.deleteRecipeById(similarRecipe.getId());
+        result = recipeDB.selectSimilarRecipes(recipeExpected.getId(), 10);
+        assertTrue(result.stream().noneMatch(similar -> similar.getRecipeId().equals(similarRecipe.getId())));
+        assertThrows(IllegalArgumentException.class, () -> recipeDB.selectSimilarRecipes(recipeExpected.getId(), 0));
+    }
+
+    @Test
+    @Order(13)
     void selectDistinctCategories() {
-        List<String> result = recipeDB.selectDistinctCategories();
+        List<String> result = recipeDB.selectDistinctCategories().getCategories();
         assertContains(result, recipeExpected.getCategory());
     }
 
     @Test
-    @Order(8)
+    @Order(14)
     void updateRecipe() throws ElementNotFoundException {
         Recipe recipeModel = DataFactory.Recipe.recipeModelV2(recipeExpected.getId());
         TestLogger.info("Model for operation: " + recipeModel);
@@ -125,7 +211,7 @@ class RecipeDBTest extends ApplicationTest {
     }
 
     @Test
-    @Order(9)
+    @Order(15)
     void updateRecipeItem() throws ElementNotFoundException {
         Recipe.Item itemModel = DataFactory.Recipe.recipeItemV2(productExpected.getId());
         TestLogger.info("Model for operation: " + itemModel);
@@ -137,6 +223,7 @@ class RecipeDBTest extends ApplicationTest {
 
         RecipeEntity recipeActual = recipeDB.selectRecipeById(recipeExpected.getId());
         assertContains(recipeActual.getRecipeItems(), recipeItem);
+        assertEquals(productExpected.getKcal() * itemModel.getCount(), recipeActual.mapToModel().getKcal(), 0.01f);
 
         recipeExpected = recipeActual;
         TestLogger.info("Updated recipe: " + recipeExpected);
@@ -144,17 +231,84 @@ class RecipeDBTest extends ApplicationTest {
 
 
     @Test
-    @Order(10)
+    @Order(16)
+    void updateRecipeItemConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<RecipeItemEntity>> updates = new ArrayList<>();
+            for (int i = 1; i <= 8; i++) {
+                Recipe.Item itemModel = DataFactory.Recipe.recipeItemV2(productExpected.getId());
+                itemModel.setCount((float) i);
+                updates.add(executor.submit(() -> recipeDB.updateRecipeItem(recipeExpected.getId(), itemModel)));
+            }
+            for (Future<RecipeItemEntity> update : updates) {
+                update.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // whichever update came last, the totals match the items
+        RecipeEntity recipeActual = recipeDB.selectRecipeById(recipeExpected.getId());
+        float count = recipeActual.getRecipeItems().iterator().next().getCount();
+        assertEquals(productExpected.getKcal() * count, recipeActual.mapToModel().getKcal(), 0.01f);
+    }
+
+    @Test
+    @Order(17)
+    void materializedNutrition() throws ElementNotFoundException {
+        float count = recipeDB.selectRecipeById(recipeExpected.getId()).getRecipeItems().iterator().next().getCount();
+        assertEquals(productExpected.getKcal() * count, recipeDB.selectRecipeById(recipeExpected.getId()).mapToModel().getKcal(), 0.01f);
+
+        Product productModel = productExpected.mapToModel();
+        productModel.setKcal(productExpected.getKcal() * 2);
+        productExpected = productDB.updateProduct(productModel);
+        TestLogger.info("Updated product: " + productExpected);
+
+        assertEquals(productModel.getKcal() * count, recipeDB.selectRecipeById(recipeExpected.getId()).mapToModel().getKcal(), 0.01f);
+    }
+
+    @Test
+    @Order(18)
+    void updateProductAndRecipeItemConcurrently() throws Exception {
+        // product updates recompute the recipe after their commit, item changes lock the recipe first
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> updates = new ArrayList<>();
+            for (int i = 1; i <= 8; i++) {
+                Recipe.Item itemModel = DataFactory.Recipe.recipeItemV2(productExpected.getId());
+                itemModel.setCount((float) i);
+                Product productModel = productExpected.mapToModel();
+                productModel.setKcal((float) i * 10);
+                updates.add(executor.submit(() -> recipeDB.updateRecipeItem(recipeExpected.getId(), itemModel)));
+                updates.add(executor.submit(() -> productDB.updateProduct(productModel)));
+            }
+            for (Future<?> update : updates) {
+                update.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        productExpected = productDB.selectProductById(productExpected.getId());
+        RecipeEntity recipeActual = recipeDB.selectRecipeById(recipeExpected.getId());
+        float count = recipeActual.getRecipeItems().iterator().next().getCount();
+        assertEquals(productExpected.getKcal() * count, recipeActual.mapToModel().getKcal(), 0.01f);
+    }
+
+    @Test
+    @Order(19)
     void deleteRecipeItemById() throws ElementNotFoundException {
         RecipeEntity recipeActual = recipeDB.deleteRecipeItemById(recipeExpected.getId(), productExpected.getId());
         assertNotContains(recipeActual.getRecipeItems().stream().map(RecipeItemEntity::getProductId).collect(Collectors.toSet()), productExpected.getId());
+        assertEquals(0f, recipeActual.mapToModel().getKcal(), 0.01f);
 
         recipeExpected = recipeActual;
         TestLogger.info("Updated recipe: " + recipeExpected);
     }
 
     @Test
-    @Order(11)
+    @Order(20)
     void deleteRecipeById() throws ElementNotFoundException {
         RecipeEntity recipeActual = recipeDB.deleteRecipeById(recipeExpected.getId());
         assertEquals(recipeExpected, recipeActual);
@@ -165,11 +319,15 @@ class RecipeDBTest extends ApplicationTest {
     }
 
     @Test
-    @Order(12)
+    @Order(21)
     void assertElementNotFound() {
         assertThrows(ElementNotFoundException.class,
                 () -> recipeDB.selectRecipeById(recipeExpected.getId()));
-        // TODO insert Recipe with items
+        Recipe recipeModel = DataFactory.Recipe.recipeModelV1(null);
+        recipeModel.setItems(List.of(DataFactory.Recipe.recipeItemV1(-1), DataFactory.Recipe.recipeItemV1(-2)));
+        ElementNotFoundException exception = assertThrows(ElementNotFoundException.class,
+                () -> recipeDB.insertRecipe(recipeModel));
+        assertEquals("-2, -1", exception.getId());
         assertThrows(ElementNotFoundException.class,
                 () -> recipeDB.insertRecipeItem(recipeExpected.getId(), new Recipe.Item()));
         assertThrows(ElementNotFoundException.class,
@@ -180,6 +338,8 @@ class RecipeDBTest extends ApplicationTest {
                 () -> recipeDB.deleteRecipeItemById(recipeExpected.getId(), productExpected.getId()));
         assertThrows(ElementNotFoundException.class,
                 () -> recipeDB.deleteRecipeById(recipeExpected.getId()));
+        assertThrows(ElementNotFoundException.class,
+                () -> recipeDB.selectSimilarRecipes(recipeExpected.getId(), 10));
     }
 
     @AfterAll
@@ -0,0 +1,241 @@
+package com.freshplanner.api.service.storage;
+
+import com.freshplanner.api.controller.model.Product;
+import com.freshplanner.api.controller.model.Storage;
+import com.freshplanner.api.exception.ElementNotFoundException;
+import com.freshplanner.api.exception.NoAccessException;
+import com.freshplanner.api.service.product.ProductDB;
+import com.freshplanner.api.service.product.ProductEntity;
+import environment.ApplicationTest;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import utility.DataFactory;
+import utility.TestLogger;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static utility.AssertionUtils.assertContains;
+
+class StorageDBTest extends ApplicationTest {
+
+    @Autowired
+    private ProductDB productDB;
+
+    @Autowired
+    private StorageDB storageDB;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private ProductEntity productExpected;
+    private final List<StorageEntity> storagesExpected = new ArrayList<>();
+
+    @BeforeAll
+    void beforeAll() {
+        Product productModel = DataFactory.Product.productModelV1(null);
+        TestLogger.info("Model for operation: " + productModel);
+
+        productExpected = productDB.insertProduct(productModel);
+        assertNotNull(productExpected.getId());
+        TestLogger.info("Inserted product: " + productExpected);
+    }
+
+    @Test
+    @Order(1)
+    void insertStorages() throws ElementNotFoundException, NoAccessException {
+        for (int i = 0; i < 3; i++) {
+            Storage storageModel = DataFactory.Storage.storageModelV1(null);
+            TestLogger.info("Model for operation: " + storageModel);
+
+            StorageEntity storageActual = storageDB.insertStorage(user.getName(), storageModel);
+            assertNotNull(storageActual.getId());
+            storageActual = storageDB.insertStorageItem(user.getName(), storageActual.getId(),
+                    DataFactory.Storage.storageItemV1(productExpected.getId()));
+            assertEquals(1, storageActual.getStorageItems().size());
+            assertEquals(1L, storageActual.getRevision());
+
+            storagesExpected.add(storageActual);
+            TestLogger.info("Inserted storage: " + storageActual);
+        }
+    }
+
+    @Test
+    @Order(2)
+    void selectUserStoragesStatementCount() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        List<Storage> result;
+        try {
+            result = storageDB.selectUserStorages(user.getName(), 0, 100)
+                    .stream().map(StorageEntity::mapToModel).collect(Collectors.toList());
+            // ids of the page and one fetch join, independent of the number of storages, users and items
+            assertEquals(2, statistics.getPrepareStatementCount());
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+
+        List<Integer> resultIds = result.stream().map(Storage::getId).collect(Collectors.toList());
+        for (StorageEntity storage : storagesExpected) {
+            assertContains(resultIds, storage.getId());
+        }
+        assertTrue(result.stream().allMatch(storage -> storage.getItems().size() == 1 && storage.getUsers().size() == 1));
+    }
+
+    @Test
+    @Order(3)
+    void selectStorageByIdAccess() {
+        Integer storageId = storagesExpected.get(0).getId();
+        assertThrows(NoAccessException.class, () -> storageDB.selectStorageById(user.getName() + "Other", storageId));
+        assertThrows(NoAccessException.class, () -> storageDB.selectStorageItemCounts(user.getName() + "Other", storageId));
+        assertThrows(ElementNotFoundException.class, () -> storageDB.selectStorageById(user.getName(), -1));
+    }
+
+    @Test
+    @Order(4)
+    void upsertStorageItems() throws ElementNotFoundException, NoAccessException {
+        Integer storageId = storagesExpected.get(0).getId();
+        Storage.Item item = DataFactory.Storage.storageItemV1(productExpected.getId());
+        item.setCount(5f);
+
+        StorageEntity storageActual = storageDB.upsertStorageItems(user.getName(), storageId, List.of(item));
+        assertEquals(1, storageActual.getStorageItems().size());
+        assertEquals(5f, storageActual.mapToModel().getItems().get(0).getCount());
+
+        assertThrows(IllegalArgumentException.class, () -> storageDB.upsertStorageItems(user.getName(), storageId, List.of(item, item)));
+        assertThrows(ElementNotFoundException.class, () -> storageDB.upsertStorageItems(user.getName(), storageId,
+                List.of(DataFactory.Storage.storageItemV1(-1))));
+        assertThrows(NoAccessException.class, () -> storageDB.upsertStorageItems(user.getName() + "Other", storageId, List.of(item)));
+    }
+
+    @Test
+    @Order(5)
+    void updateStorageItemCount() throws ElementNotFoundException, NoAccessException {
+        Integer storageId = storagesExpected.get(0).getId();
+        Integer productId = productExpected.getId();
+
+        assertEquals(7f, storageDB.updateStorageItemCount(user.getName(), storageId, productId, 2f).getCount());
+        assertEquals(0f, storageDB.updateStorageItemCount(user.getName(), storageId, productId, -100f).getCount());
+
+        assertThrows(IllegalArgumentException.class, () -> storageDB.updateStorageItemCount(user.getName(), storageId, productId, Float.NaN));
+        assertThrows(ElementNotFoundException.class, () -> storageDB.updateStorageItemCount(user.getName(), storageId, -1, 1f));
+        // no item of 'Penne' (data.sql) in the storage: a negative delta must not insert one
+        assertThrows(ElementNotFoundException.class, () -> storageDB.updateStorageItemCount(user.getName(), storageId, 1, -1f));
+        assertThrows(NoAccessException.class, () -> storageDB.updateStorageItemCount(user.getName() + "Other", storageId, productId, 1f));
+    }
+
+    @Test
+    @Order(6)
+    void updateStorageVersionConflict() throws ElementNotFoundException, NoAccessException {
+        Storage storageModel = storageDB.selectStorageById(user.getName(), storagesExpected.get(0).getId()).mapToModel();
+        storageModel.setName(storageModel.getName() + "Updated");
+        Storage storageUpdated = storageDB.updateStorage(user.getName(), storageModel).mapToModel();
+        assertEquals(storageModel.getVersion() + 1, storageUpdated.getVersion());
+        // same name, the version moves anyway
+        assertEquals(storageUpdated.getVersion() + 1, storageDB.updateStorage(user.getName(), storageUpdated).getVersion());
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> storageDB.updateStorage(user.getName(), storageModel));
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> storageDB.updateStorage(user.getName(), storageUpdated));
+    }
+
+    @Test
+    @Order(7)
+    void selectStorageChanges() throws ElementNotFoundException, NoAccessException {
+        Integer storageId = storagesExpected.get(0).getId();
+        Integer productId = productExpected.getId();
+
+        Storage.Changes all = storageDB.selectStorageChanges(user.getName(), storageId, 0);
+        assertTrue(all.getRevision() > 0);
+        assertEquals(List.of(productId), all.getItems().stream().map(Storage.Item::getProductId).collect(Collectors.toList()));
+        assertTrue(all.getRemovedProductIds().isEmpty());
+
+        Storage.Changes none = storageDB.selectStorageChanges(user.getName(), storageId, all.getRevision());
+        assertTrue(none.getItems().isEmpty() && none.getRemovedProductIds().isEmpty());
+
+        StorageEntity storageActual = storageDB.deleteStorageItem(user.getName(), storageId, productId);
+        Storage.Changes removed = storageDB.selectStorageChanges(user.getName(), storageId, all.getRevision());
+        assertEquals(all.getRevision() + 1, removed.getRevision());
+        assertEquals(removed.getRevision(), storageActual.getRevision());
+        assertTrue(removed.getItems().isEmpty());
+        assertEquals(List.of(productId), removed.getRemovedProductIds());
+
+        assertThrows(IllegalArgumentException.class, () -> storageDB.selectStorageChanges(user.getName(), storageId, removed.getRevision() + 1));
+        assertThrows(NoAccessException.class, () -> storageDB.selectStorageChanges(user.getName() + "Other", storageId, 0));
+    }
+
+    @Test
+    @Order(8)
+    void selectStorageChangesFromExistingItems() throws ElementNotFoundException, NoAccessException {
+        // an item from before the change log, without change row ('Penne' from data.sql)
+        Integer storageId = storagesExpected.get(1).getId();
+        jdbcTemplate.update("insert into storage_items (storage_id, product_id, count) values (?, 1, 2)", storageId);
+
+        Storage.Changes all = storageDB.selectStorageChanges(user.getName(), storageId, 0);
+        List<Integer> productIds = all.getItems().stream().map(Storage.Item::getProductId).collect(Collectors.toList());
+        assertContains(productIds, 1);
+        assertContains(productIds, productExpected.getId());
+        assertTrue(all.getRemovedProductIds().isEmpty());
+
+        Storage.Changes none = storageDB.selectStorageChanges(user.getName(), storageId, all.getRevision());
+        assertTrue(none.getItems().isEmpty() && none.getRemovedProductIds().isEmpty());
+    }
+
+    @Test
+    @Order(9)
+    void updateStorageItemCountConcurrently() throws Exception {
+        // new items of one storage at the same time: every writer has to get the storage row lock first
+        Integer storageId = storagesExpected.get(2).getId();
+        long revision = storageDB.selectStorageChanges(user.getName(), storageId, 0).getRevision();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<StorageItemEntity>> updates = new ArrayList<>();
+            for (int productId = 2; productId <= 9; productId++) {
+                int id = productId; // products from data.sql
+                updates.add(executor.submit(() -> storageDB.updateStorageItemCount(user.getName(), storageId, id, 1f)));
+            }
+            for (Future<StorageItemEntity> update : updates) {
+                assertEquals(1f, update.get().getCount());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Storage.Changes changes = storageDB.selectStorageChanges(user.getName(), storageId, revision);
+        assertEquals(revision + 8, changes.getRevision());
+        assertEquals(8, changes.getItems().size());
+    }
+
+    @Test
+    @Order(10)
+    void deleteStorages() throws ElementNotFoundException, NoAccessException {
+        for (StorageEntity storage : storagesExpected) {
+            StorageEntity storageActual = storageDB.deleteStorageById(user.getName(), storage.getId());
+            assertEquals(storage.getId(), storageActual.getId());
+            TestLogger.info("Deleted storage: " + storageActual);
+        }
+    }
+
+    @AfterAll
+    void afterAll() throws ElementNotFoundException {
+        ProductEntity productActual = productDB.deleteProductById(productExpected.getId());
+        assertEquals(productExpected.getId(), productActual.getId());
+        TestLogger.info("Deleted product: " + productActual);
+    }
+}
@@ -98,4 +98,52 @@ public class DataFactory {
             );
         }
     }
+
+    public static class Storage {
+        public static com.freshplanner.api.controller.model.Storage storageModelV1(Integer id) {
+            return new com.freshplanner.api.controller.model.Storage(
+                    id,
+                    "TestStorage",
+                    new ArrayList<>(),
+                    new ArrayList<>(),
+                    null,
+                    null
+            );
+        }
+
+        public static com.freshplanner.api.controller.model.Storage.Item storageItemV1(Integer productId) {
+            return new com.freshplanner.api.controller.model.Storage.Item(
+                    productId,
+                    "Placeholder",
+                    null,
+                    null,
+                    1f,
+                    null
+            );
+        }
+    }
+
+    public static class Cart {
+        public static com.freshplanner.api.controller.model.Cart cartModelV1(Integer id) {
+            return new com.freshplanner.api.controller.model.Cart(
+                    id,
+                    "TestCart",
+                    new ArrayList<>(),
+                    new ArrayList<>(),
+                    null,
+                    null
+            );
+        }
+
+        public static com.freshplanner.api.controller.model.Cart.Item cartItemV1(Integer productId) {
+            return new com.freshplanner.api.controller.model.Cart.Item(
+                    productId,
+                    "Placeholder",
+                    null,
+                    null,
+                    1f,
+                    null
+            );
+        }
+    }
 }